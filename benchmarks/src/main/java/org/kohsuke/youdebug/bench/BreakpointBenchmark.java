@@ -0,0 +1,77 @@
+package org.kohsuke.youdebug.bench;
+
+import com.sun.jdi.Method;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a breakpoint hit, from the target hitting it, through {@link org.kohsuke.youdebug.VM#dispatchEvents()},
+ * to the handler returning and the target resuming.
+ *
+ * <p>
+ * Each operation waits for the handler to be invoked once, so the score is the full round trip.
+ * The handler gives up waiting for the benchmark after a second, so that the target can shut down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BreakpointBenchmark {
+    /**
+     * "line" for a line breakpoint in {@link Target#ping(int)}, "entry" for a method entry breakpoint on it.
+     */
+    @Param({"line","entry"})
+    public String kind;
+
+    private TargetVM target;
+    private final SynchronousQueue<Object> hits = new SynchronousQueue<Object>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = new TargetVM(0);
+        if (kind.equals("line")) {
+            target.vm.breakpoint(Target.class.getName(), Target.PING_LINE, new TargetVM.Handler() {
+                public Object doCall() throws InterruptedException {
+                    hits.offer(this,1,TimeUnit.SECONDS);
+                    return null;
+                }
+            });
+        } else {
+            target.vm.methodEntryBreakpoint(Target.class.getName(), "ping", new MethodHandler() {
+                public Object doCall(Method m) throws InterruptedException {
+                    hits.offer(m,1,TimeUnit.SECONDS);
+                    return null;
+                }
+            });
+        }
+        target.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.close();
+    }
+
+    @Benchmark
+    public Object roundTrip() throws InterruptedException {
+        return hits.take();
+    }
+
+    public static abstract class MethodHandler extends groovy.lang.Closure {
+        protected MethodHandler() {
+            super(null);
+        }
+
+        public abstract Object doCall(Method m) throws Exception;
+    }
+}
@@ -0,0 +1,95 @@
+package org.kohsuke.youdebug.bench;
+
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import org.kohsuke.youdebug.JDICategory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of what event handlers do most: remote method invocations and reading variables.
+ *
+ * <p>
+ * Variables are read from the benchmark thread while the "parked" thread is held suspended,
+ * so these are the costs of the first access in an event, before any per-event caching kicks in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InvocationBenchmark {
+    private TargetVM target;
+    private ThreadReference parked;
+    private ObjectReference self;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = new TargetVM(0);
+        target.holdParkedThread();
+        parked = target.vm.getThreads().byName("parked");
+        self = parked.frame(0).thisObject();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.close();
+    }
+
+    /**
+     * Overhead of {@link TargetVM#inHandler(Callable)} alone, to be subtracted from {@link #methodMissing()}.
+     */
+    @Benchmark
+    public Object handoff() throws Exception {
+        return target.inHandler(new Callable<Object>() {
+            public Object call() {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * {@code self.ping(1)}
+     */
+    @Benchmark
+    public Object methodMissing() throws Exception {
+        return target.inHandler(new Callable<Object>() {
+            public Object call() throws Exception {
+                return JDICategory.methodMissing(self, "ping", new Object[]{1});
+            }
+        });
+    }
+
+    /**
+     * A local variable, through {@code propertyMissing} on {@link StackFrame}.
+     */
+    @Benchmark
+    public Object frameLocal() throws Exception {
+        return JDICategory.propertyMissing(parked.frame(0), "local");
+    }
+
+    /**
+     * A field of 'this', through {@code propertyMissing} on {@link StackFrame}.
+     */
+    @Benchmark
+    public Object frameField() throws Exception {
+        return JDICategory.propertyMissing(parked.frame(0), "label");
+    }
+
+    /**
+     * A field, through {@code propertyMissing} on {@link ObjectReference}.
+     */
+    @Benchmark
+    public Object objectField() throws Exception {
+        return JDICategory.propertyMissing(self, "counter");
+    }
+}
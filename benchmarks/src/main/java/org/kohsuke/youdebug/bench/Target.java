@@ -0,0 +1,80 @@
+package org.kohsuke.youdebug.bench;
+
+/**
+ * Program that the benchmarks debug.
+ *
+ * <p>
+ * The main thread calls {@link #ping(int)} in a tight loop, while another thread parks itself
+ * in {@link #park()} so that benchmarks can poke at a stack frame. Optionally, a number of idle
+ * threads are started to make thread dumps bigger.
+ *
+ * <p>
+ * Benchmarks set breakpoints by line numbers, so keep the constants in sync when editing this file.
+ */
+public class Target {
+    static final int PING_LINE = 26;
+    static final int PARK_LINE = 33;
+    static final int READY_LINE = 78;
+
+    public int counter;
+    public String label = "target";
+
+    /**
+     * Called in a tight loop.
+     */
+    public int ping(int x) {
+        counter++;
+        return x;
+    }
+
+    public void park() throws InterruptedException {
+        int local = 42;
+        while (true) {
+            Thread.sleep(local);
+        }
+    }
+
+    /**
+     * @param args
+     *      Number of idle threads to start.
+     */
+    public static void main(String[] args) throws Exception {
+        int n = args.length>0 ? Integer.parseInt(args[0]) : 0;
+        for (int i=0; i<n; i++) {
+            Thread t = new Thread("idle-"+i) {
+                public void run() {
+                    try {
+                        synchronized (this) {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        // exit
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+        ready();
+
+        final Target target = new Target();
+        Thread parked = new Thread("parked") {
+            public void run() {
+                try {
+                    target.park();
+                } catch (InterruptedException e) {
+                    // exit
+                }
+            }
+        };
+        parked.setDaemon(true);
+        parked.start();
+
+        while (true)
+            target.ping(target.counter);
+    }
+
+    private static void ready() {
+        System.out.println("ready");
+    }
+}
@@ -0,0 +1,114 @@
+package org.kohsuke.youdebug.bench;
+
+import groovy.lang.Closure;
+import org.kohsuke.youdebug.VM;
+import org.kohsuke.youdebug.VMFactory;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Forks {@link Target} and dispatches its events on a background thread.
+ *
+ * <p>
+ * Some operations, such as remote method invocations, only work from inside an event handler.
+ * {@link #holdParkedThread()} sets up a handler that keeps the "parked" thread suspended and runs
+ * the tasks given to {@link #inHandler(Callable)}. That handoff costs a few microseconds per call,
+ * which is measured by {@link InvocationBenchmark#handoff()} so that it can be subtracted.
+ */
+public final class TargetVM {
+    public final VM vm;
+    private final Thread dispatcher;
+    private final BlockingQueue<FutureTask<?>> tasks = new LinkedBlockingQueue<FutureTask<?>>();
+    private static final FutureTask<?> STOP = new FutureTask<Object>(new Callable<Object>() {
+        public Object call() {
+            return null;
+        }
+    });
+
+    public TargetVM(int idleThreads) throws Exception {
+        String cp = new File(Target.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        vm = VMFactory.launch("-cp "+cp+" "+Target.class.getName()+" "+idleThreads);
+        dispatcher = new Thread("dispatcher") {
+            public void run() {
+                try {
+                    vm.dispatchEvents();
+                } catch (InterruptedException e) {
+                    // exit
+                }
+            }
+        };
+        dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Starts running the target. Breakpoints should be set before this.
+     */
+    public void start() {
+        dispatcher.start();
+    }
+
+    /**
+     * Blocks until the target has started all its threads.
+     */
+    public void awaitReady() throws Exception {
+        final CountDownLatch ready = new CountDownLatch(1);
+        vm.breakpoint(Target.class.getName(), Target.READY_LINE, new Handler() {
+            public Object doCall() {
+                ready.countDown();
+                return null;
+            }
+        });
+        start();
+        ready.await();
+    }
+
+    /**
+     * Suspends the "parked" thread at its breakpoint and starts running tasks given to {@link #inHandler(Callable)}.
+     */
+    public void holdParkedThread() throws Exception {
+        final CountDownLatch held = new CountDownLatch(1);
+        vm.breakpoint(Target.class.getName(), Target.PARK_LINE, new Handler() {
+            public Object doCall() throws InterruptedException {
+                held.countDown();
+                while (true) {
+                    FutureTask<?> t = tasks.take();
+                    if (t==STOP)    return null;
+                    t.run();
+                }
+            }
+        });
+        start();
+        held.await();
+    }
+
+    /**
+     * Runs the given task in the event handler of the "parked" thread.
+     */
+    public <T> T inHandler(Callable<T> c) throws Exception {
+        FutureTask<T> t = new FutureTask<T>(c);
+        tasks.put(t);
+        return t.get();
+    }
+
+    public void close() throws Exception {
+        tasks.put(STOP);
+        vm.getVirtualMachine().exit(0);
+        dispatcher.join(10000);
+    }
+
+    /**
+     * Closure that takes no argument, for breakpoints set from Java.
+     */
+    public static abstract class Handler extends Closure {
+        protected Handler() {
+            super(null);
+        }
+
+        public abstract Object doCall() throws Exception;
+    }
+}
@@ -0,0 +1,50 @@
+package org.kohsuke.youdebug.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link org.kohsuke.youdebug.VM#dumpAllThreads(PrintWriter)} against a suspended target
+ * with the given number of idle threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThreadDumpBenchmark {
+    @Param({"10","100","1000"})
+    public int threads;
+
+    private TargetVM target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        target = new TargetVM(threads);
+        target.awaitReady();
+        target.vm.suspend();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.vm.resume();
+        target.close();
+    }
+
+    @Benchmark
+    public int dumpAllThreads() throws Exception {
+        StringWriter sw = new StringWriter();
+        target.vm.dumpAllThreads(new PrintWriter(sw));
+        return sw.getBuffer().length();
+    }
+}
@@ -53,6 +53,50 @@ public class JDICategory {
         return a.getValue(index);
     }
 
+    /**
+     * Range access to array, like {@code a[0..9]} or {@code a[-10..-1]}.
+     * The elements are read in chunks, and returned unwrapped.
+     */
+    public static List getAt(ArrayReference a, IntRange range) {
+        int len = a.length();
+        int from = range.fromInt, to = range.toInt;
+        if (from<0) from += len;
+        if (to<0)   to += len;
+        boolean reverse = range.reverse;
+        if (from>to) {
+            int t = from; from = to; to = t;
+            reverse = !reverse;
+        }
+        List r = ArrayAccess.range(a,from,to-from+1);
+        return reverse ? r.reverse() : r;
+    }
+
+    /**
+     * Iterates the unwrapped elements of the array, reading them in chunks,
+     * so that {@code a.each { ... }} doesn't make a round trip per element.
+     */
+    public static Iterator iterator(ArrayReference a) {
+        return ArrayAccess.iterator(a);
+    }
+
+    /**
+     * Copies the array into a local array in chunks.
+     * A primitive array becomes a local array of the same type, like {@code byte[]} or {@code int[]},
+     * and other arrays become {@code Object[]}, whose elements are unwrapped and nested arrays copied.
+     */
+    public static Object toArray(ArrayReference a) {
+        return ArrayAccess.toLocal(a,0,a.length());
+    }
+
+    /**
+     * Copies a slice of the array into a local array.
+     *
+     * @see #toArray(ArrayReference)
+     */
+    public static Object toArray(ArrayReference a, int from, int length) {
+        return ArrayAccess.toLocal(a,from,length);
+    }
+
     /**
      * Dumps the stack trace of an exception.
      *
@@ -79,10 +123,12 @@ public class JDICategory {
             LOGGER.fine("Invoking "+name+" on "+ref+" with "+ Arrays.asList(args));
 
         List<Value> arguments = Variable.wrapList(ref.virtualMachine(), args);
+        ValueCache.invalidate();    // the method can change anything
+        VM vm = VM.current();
         try {
-            return Variable.unwrap(ref.invokeMethod( VM.current().getCurrentThread(),
+            return Variable.unwrap(ref.invokeMethod( vm.getCurrentThread(),
                     chooseMethod(ref.referenceType(), name, arguments, false),
-                    arguments, 0));
+                    arguments, vm.invokeOptions));
         } catch (InvocationException e) {
             e.exception().dumpStackTrace(System.out);
             throw e;
@@ -107,6 +153,134 @@ public class JDICategory {
         v.set(value);
     }
 
+    /**
+     * Reads multiple instance fields in one round trip.
+     *
+     * <pre>
+     * def m = o.fields("x","y")
+     * println m.x+m.y
+     * </pre>
+     *
+     * The values are also remembered until the event handler returns, so reading the same fields
+     * through properties afterward doesn't communicate with the target JVM again.
+     *
+     * @return
+     *      Map from field names to their values, in the order of the given names.
+     */
+    public static Map<String,Object> fields(ObjectReference ref, String[] names) {
+        ReferenceType t = ref.referenceType();
+        List<Field> fields = names.collect { String n -> fieldOf(t,n) };
+        return toMap(names, fields, ValueCache.getValues(ref,fields));
+    }
+
+    /**
+     * Copies the object graph reachable from this object into local maps and lists, so that it can be
+     * logged or compared after the thread resumes.
+     *
+     * <pre>
+     * def req = request.snapshot(depth:3, maxObjects:500)
+     * println req.headers
+     * </pre>
+     *
+     * Objects become maps of their fields, plus '@class' and '@id' for their class name and {@link ObjectReference#uniqueID()}.
+     * Arrays become lists, and strings and boxed primitives are copied as they are.
+     * Objects that appear more than once, or that are beyond the limits, are represented by
+     * maps with just '@class' and '@id', so the copy has no cycles.
+     *
+     * @param options
+     *      'depth' is how many levels of objects to expand, including this one (defaults to 3).
+     *      'maxObjects' is the maximum number of objects and arrays to expand (defaults to 500).
+     *      'maxArrayLength' is the maximum number of elements to copy from each array (defaults to 1000).
+     */
+    public static Object snapshot(ObjectReference ref, Map options) {
+        return new GraphCopier(
+            intOption(options,"depth",3),
+            intOption(options,"maxObjects",500),
+            intOption(options,"maxArrayLength",1000)).copy(ref);
+    }
+
+    /**
+     * Gets an int option, which can be 0, unlike what {@code options.x ?: defaultValue} would allow.
+     */
+    private static int intOption(Map options, String key, int defaultValue) {
+        def v = options[key];
+        return v!=null ? v as int : defaultValue;
+    }
+
+    /**
+     * Copies the object graph reachable from this object with the default limits.
+     *
+     * @see #snapshot(ObjectReference, Map)
+     */
+    public static Object snapshot(ObjectReference ref) {
+        return snapshot(ref,[:]);
+    }
+
+    /**
+     * Reads the elements of a {@link Collection} into a local list.
+     *
+     * <p>
+     * An {@link ArrayList} is read straight from its fields, without invoking any method. Other collections
+     * are iterated through method invocations, which resume the target JVM on every call and are thus far slower.
+     *
+     * @param options
+     *      'max' is the maximum number of elements to read (defaults to 10000).
+     */
+    public static List readList(ObjectReference ref, Map options) {
+        int max = intOption(options,"max",10000);
+        List r = new CollectionReader(max).readList(ref);
+        if (r!=null)    return r;
+
+        r = [];
+        def itr = methodMissing(ref,"iterator");
+        while (r.size()<max && methodMissing(itr,"hasNext"))
+            r.add(methodMissing(itr,"next"));
+        return r;
+    }
+
+    /**
+     * Reads the elements of a {@link Collection} with the default limit.
+     *
+     * @see #readList(ObjectReference, Map)
+     */
+    public static List readList(ObjectReference ref) {
+        return readList(ref,[:]);
+    }
+
+    /**
+     * Reads the entries of a {@link Map} into a local map, in its iteration order.
+     *
+     * <p>
+     * {@link HashMap}, {@link LinkedHashMap} and {@link java.util.concurrent.ConcurrentHashMap} are read straight
+     * from their fields, without invoking any method. Other maps are iterated through method invocations,
+     * which resume the target JVM on every call and are thus far slower.
+     *
+     * @param options
+     *      'max' is the maximum number of entries to read (defaults to 10000).
+     */
+    public static Map readMap(ObjectReference ref, Map options) {
+        int max = intOption(options,"max",10000);
+        Map r = new CollectionReader(max).readMap(ref);
+        if (r!=null)    return r;
+
+        r = new LinkedHashMap();
+        def itr = methodMissing(methodMissing(ref,"entrySet"),"iterator");
+        while (r.size()<max && methodMissing(itr,"hasNext")) {
+            def e = methodMissing(itr,"next");
+            r.put(methodMissing(e,"getKey"),methodMissing(e,"getValue"));
+        }
+        return r;
+    }
+
+    /**
+     * Reads the entries of a {@link Map} with the default limit.
+     *
+     * @see #readMap(ObjectReference, Map)
+     */
+    public static Map readMap(ObjectReference ref) {
+        return readMap(ref,[:]);
+    }
+
     /**
      * Select the right method to invoke based on the arguments and their types.
      *
@@ -114,6 +288,20 @@ public class JDICategory {
      *      If true, only search the static methods.
      */
     private static Method chooseMethod(ReferenceType type, String name, List<Value> args, boolean staticOnly) throws ClassNotLoadedException {
+        TypeCache cache = typeCache();
+        if (cache==null)
+            return resolveMethod(type, name, args, staticOnly);
+
+        List<?> key = TypeCache.methodKey(type, name, args, staticOnly);
+        Method m = cache.getMethod(key);
+        if (m==null) {
+            m = resolveMethod(type, name, args, staticOnly);
+            cache.putMethod(key,m);
+        }
+        return m;
+    }
+
+    private static Method resolveMethod(ReferenceType type, String name, List<Value> args, boolean staticOnly) throws ClassNotLoadedException {
         OUTER:
         for (Method m : type.methodsByName(name)) {
             if (m.argumentTypeNames().size()!=args.size())
@@ -142,6 +330,19 @@ public class JDICategory {
         // this handles all the primitives and other simple cases
         if (subtype.equals(type))      return true;
 
+        TypeCache cache = typeCache();
+        if (cache==null)
+            return computeAssignableFrom(type, subtype);
+
+        Boolean b = cache.isAssignableFrom(type, subtype);
+        if (b==null) {
+            b = computeAssignableFrom(type, subtype);
+            cache.putAssignableFrom(type, subtype, b);
+        }
+        return b;
+    }
+
+    private static boolean computeAssignableFrom(Type type, Type subtype) throws ClassNotLoadedException {
         // transparent boxing/unboxing
         if (type instanceof PrimitiveType && subtype instanceof ClassType)
             return subtype.name().equals(primitive2box.get(type.name()));
@@ -213,6 +414,69 @@ public class JDICategory {
         v.set(value);
     }
 
+    /**
+     * Reads multiple variables visible from the stack frame, in as few round trips as possible.
+     *
+     * Local variables, fields of 'this', and static fields are each read in one batch.
+     * Like {@link #fields(ObjectReference, String[])}, the values are remembered until the event handler returns.
+     *
+     * @return
+     *      Map from variable names to their values, in the order of the given names.
+     */
+    public static Map<String,Object> variables(StackFrame frame, String[] names) {
+        ObjectReference _this = frame.thisObject();
+        ReferenceType t = frame.location().declaringType();
+
+        Map<String,LocalVariable> locals = [:];
+        Map<String,Field> instanceFields = [:];
+        Map<String,Field> staticFields = [:];
+        for (String n : names) {
+            n = unescape(n);
+            if (n=="this")      continue;
+
+            LocalVariable v = null;
+            try {
+                v = frame.visibleVariableByName(n);
+            } catch (AbsentInformationException e) {
+                // no debug information. fall through.
+            }
+            if (v!=null) {
+                locals[n] = v;
+                continue;
+            }
+
+            Field fi = _this?.referenceType()?.fieldByName(n);
+            if (fi!=null) {
+                instanceFields[n] = fi;
+                continue;
+            }
+
+            fi = t.fieldByName(n);
+            if (fi!=null && fi.isStatic()) {
+                staticFields[n] = fi;
+                continue;
+            }
+
+            throw new MissingPropertyException(n,StackFrame.class);
+        }
+
+        Map<Object,Value> values = [:];
+        if (!locals.isEmpty())
+            values.putAll(ValueCache.getValues(frame,new ArrayList<LocalVariable>(locals.values())));
+        if (!instanceFields.isEmpty())
+            values.putAll(ValueCache.getValues(_this,new ArrayList<Field>(instanceFields.values())));
+        if (!staticFields.isEmpty())
+            values.putAll(ValueCache.getValues(t,new ArrayList<Field>(staticFields.values())));
+
+        Map<String,Object> r = new LinkedHashMap<String,Object>();
+        for (String n : names) {
+            n = unescape(n);
+            if (n=="this")  r[n] = _this;
+            else            r[n] = Variable.unwrap(values[locals[n] ?: instanceFields[n] ?: staticFields[n]]);
+        }
+        return r;
+    }
+
     /**
      * Obtains the variable visible from the stack frame.
      */
@@ -229,6 +493,19 @@ public class JDICategory {
             // fall through
         }
 
+        Map<String,Variable> resolved = ValueCache.variablesOf(frame);
+        if (resolved!=null && resolved.containsKey(name))
+            return resolved[name];
+        Variable v = resolveVariable(frame, name);
+        if (resolved!=null)
+            resolved[name] = v;
+        return v;
+    }
+
+    /**
+     * Finds the variable of the given name visible from the stack frame.
+     */
+    private static Variable resolveVariable(StackFrame frame, String name) {
         // 'this'?
         if (name.equals("this"))
             return Variable.fromValue(frame.virtualMachine(),frame.thisObject());
@@ -267,7 +544,7 @@ public class JDICategory {
     private static Variable getVariable(ObjectReference ref, String name) {
         Variable v = null;
         if (ref instanceof ThreadReference)
-            v = getVariable(((ThreadReference) ref).frame(0),name);
+            v = getVariable(ValueCache.topFrame((ThreadReference) ref),name);
         if (v == null) {
             name = unescape(name);
             Field f = ref.referenceType().fieldByName(name);
@@ -287,14 +564,16 @@ public class JDICategory {
             LOGGER.fine("Invoking "+name+" on "+c+" with "+ Arrays.asList(args));
 
         List<Value> arguments = Variable.wrapList(c.virtualMachine(), args);
+        ValueCache.invalidate();    // the method can change anything
 
+        VM vm = VM.current();
         if (name=="new") {// constructor invocation
-            return Variable.unwrap(c.newInstance( VM.current().currentThread,
-                    chooseMethod(c,"<init>",arguments,false),arguments,0));
+            return Variable.unwrap(c.newInstance( vm.currentThread,
+                    chooseMethod(c,"<init>",arguments,false),arguments,vm.invokeOptions));
         }
 
-        return Variable.unwrap(c.invokeMethod( VM.current().currentThread,
-                chooseMethod(c,name,arguments,true), arguments, 0));
+        return Variable.unwrap(c.invokeMethod( vm.currentThread,
+                chooseMethod(c,name,arguments,true), arguments, vm.invokeOptions));
     }
 
     /**
@@ -311,6 +590,39 @@ public class JDICategory {
         lvalue(c,name).set(value);
     }
 
+    /**
+     * Reads multiple static fields in one round trip.
+     *
+     * Like {@link #fields(ObjectReference, String[])}, the values are remembered until the event handler returns.
+     *
+     * @return
+     *      Map from field names to their values, in the order of the given names.
+     */
+    public static Map<String,Object> fields(ClassType c, String[] names) {
+        List<Field> fields = names.collect { String n ->
+            Field f = fieldOf(c,n);
+            if (!f.isStatic())  throw new MissingPropertyException("No such static field '"+n+"' on "+c.name());
+            return f;
+        };
+        return toMap(names, fields, ValueCache.getValues(c,fields));
+    }
+
+    private static Field fieldOf(ReferenceType t, String name) {
+        Field f = t.fieldByName(unescape(name));
+        if (f==null)        throw new MissingPropertyException("No such property '"+name+"' on "+t.name());
+        return f;
+    }
+
+    /**
+     * Puts the values of the fields into a map keyed by the names they were requested with.
+     */
+    private static Map<String,Object> toMap(String[] names, List<Field> fields, Map<Field,Value> values) {
+        Map<String,Object> r = new LinkedHashMap<String,Object>();
+        for (int i=0; i<names.length; i++)
+            r[unescape(names[i])] = Variable.unwrap(values[fields[i]]);
+        return r;
+    }
+
     private static Variable lvalue(ClassType c, String name) {
         name = unescape(name);
         Field f = c.fieldByName(name);
@@ -318,6 +630,14 @@ public class JDICategory {
         return Variable.fromField(c,f);
     }
 
+    /**
+     * Memoized type information of the JVM that we are currently talking to, or null if we are outside
+     * the event dispatching.
+     */
+    private static TypeCache typeCache() {
+        return VM.current()?.typeCache;
+    }
+
     /**
      * Decode escapes of the form '@name'.
      *
@@ -352,24 +672,14 @@ public class JDICategory {
 
     /**
      * Dumps the current thread stack
+     *
+     * @param out
+     *      Either {@link PrintWriter} or {@link PrintStream}.
      */
     public static void dumpThread(ThreadReference tr, out) throws IncompatibleThreadStateException {
-        out.printf("\"%s\" %s\n", tr.name(), getStatusMessage(tr));
-        int c = tr.frameCount();
-        for (int i=0; i<c; i++) {
-            Location l = tr.frame(i).location();
-            out.printf("\tat %s.%s", l.declaringType().name(), l.method().name());
-            try {
-                String n = l.sourceName();
-                int line = l.lineNumber();
-                if (line<0)
-                    out.println("(Native Method)");
-                else
-                    out.printf("(%s:%s)\n", n, line);
-            } catch (AbsentInformationException e) {
-                out.println();
-            }
-        }
+        PrintWriter w = out instanceof PrintWriter ? out : new PrintWriter(out);
+        ThreadDumper d = VM.current()?.threadDumper ?: new ThreadDumper();
+        d.dump(tr,w);
     }
 
     private static final Logger LOGGER = Logger.getLogger(JDICategory.class.getName());
@@ -392,24 +702,59 @@ public class JDICategory {
         primitive2box(float.class,Float.class);
         primitive2box(double.class,Double.class);
 
+        JDIMetaClassCreationHandle.install();
+    }
+
+    /**
+     * methodMissing/propertyMissing handlers of this class, keyed by the JDI type they apply to.
+     */
+    private static Map<Class,List<java.lang.reflect.Method>> handlers;
+
+    private static synchronized Map<Class,List<java.lang.reflect.Method>> getHandlers() {
+        if (handlers==null) {
+            Map<Class,List<java.lang.reflect.Method>> r = [:];
+            JDICategory.class.methods.findAll { m -> m.name=="methodMissing" || m.name=="propertyMissing" }.each { m ->
+                r.get(m.parameterTypes[0],[]).add(m);
+            }
+            handlers = r;
+        }
+        return handlers;
+    }
+
+    /**
+     * Creates the metaclass of the given JDI implementation class, with the methodMissing/propertyMissing handlers
+     * of the JDI types it implements. Called from {@link JDIMetaClassCreationHandle} when Groovy needs
+     * the metaclass for the first time.
+     *
+     * @return
+     *      null if no handler applies to this class.
+     */
+    /*package*/ static MetaClass createMetaClass(Class type) {
         // caution: because of http://jira.codehaus.org/browse/GROOVY-3871,
         // we shouldn't define these handlers for two interfaces that are inheritance-related.
-        def methods = JDICategory.class.methods
-        methods.findAll { m -> m.name=="methodMissing" }.each { registerMethodMissing(it) }
-        methods.findAll { m -> m.name=="propertyMissing" }.each { registerPropertyMissing(it); }
+        def applicable = getHandlers().findAll { t, ms -> t.isAssignableFrom(type) };
+        if (applicable.isEmpty())   return null;
+
+        ExpandoMetaClass emc = new ExpandoMetaClass(type,false);
+        applicable.each { t, ms ->
+            ms.each { m ->
+                if (m.name=="methodMissing")    registerMethodMissing(emc,m);
+                else                            registerPropertyMissing(emc,m);
+            }
+        }
+        return emc;
     }
 
-    private static void registerMethodMissing(java.lang.reflect.Method m) {
-        Class target = m.parameterTypes[0];
-        target.metaClass."${m.name}" = {String name, Object args ->
+    private static void registerMethodMissing(ExpandoMetaClass emc, java.lang.reflect.Method m) {
+        emc.registerInstanceMethod(m.name, {String name, Object args ->
             return m.invoke(null, [delegate, name, args] as Object[]);
-        }
+        });
     }
 
     /**
      * Groovy doesn't create a new variable for each loop, so to fix 'm' we need to put this in a separate method
      */
-    private static void registerPropertyMissing(java.lang.reflect.Method m) {
+    private static void registerPropertyMissing(ExpandoMetaClass emc, java.lang.reflect.Method m) {
         Class[] pt = m.parameterTypes
         Closure c;
         if (pt.length == 2) {
@@ -430,6 +775,6 @@ public class JDICategory {
             }
         }
 
-        pt[0].metaClass."${m.name}" = c
+        emc.registerInstanceMethod(m.name, c);
     }
 }
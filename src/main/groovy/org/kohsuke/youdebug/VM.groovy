@@ -1,6 +1,7 @@
 package org.kohsuke.youdebug
 
 import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.runtime.InvokerHelper
 import com.sun.jdi.IncompatibleThreadStateException
 import com.sun.jdi.request.EventRequestManager
 import com.sun.jdi.event.LocatableEvent
@@ -30,11 +31,20 @@ import com.sun.jdi.request.EventRequest
 import java.util.logging.Level
 import com.sun.jdi.request.MethodEntryRequest
 import com.sun.jdi.event.MethodEntryEvent
+import com.sun.jdi.event.BreakpointEvent
+import com.sun.jdi.Method
 import com.sun.jdi.request.MethodExitRequest
 import com.sun.jdi.event.MethodExitEvent
 import com.sun.jdi.request.AccessWatchpointRequest
 import com.sun.jdi.Field
 import com.sun.jdi.request.ModificationWatchpointRequest
+import java.util.concurrent.ThreadFactory
+import com.sun.jdi.request.ClassUnloadRequest
+import com.sun.jdi.event.ClassUnloadEvent
+import com.sun.jdi.ObjectReference
+import com.sun.jdi.ArrayReference
+import com.sun.jdi.ArrayType
+import com.sun.jdi.ClassType
 
 /**
  * Debugger view of a Virtual machine. 
@@ -46,13 +56,55 @@ public class VM implements Closeable {
     private final EventQueue q;
     private final EventRequestManager req;
     private final ThreadList threads;
-    private Event currentEvent;
+    private final ThreadLocal<Event> currentEvent = new ThreadLocal<Event>();
+    private int dispatchThreads;
+    /**
+     * Closures to run after the event set that's being dispatched is resumed.
+     */
+    private final ThreadLocal<List<Closure>> afterResume = new ThreadLocal<List<Closure>>();
+    /**
+     * Method resolution and type assignability for remote method invocations.
+     */
+    /*package*/ final TypeCache typeCache = new TypeCache();
+    /*package*/ final ThreadDumper threadDumper = new ThreadDumper();
+    /**
+     * Strings passed to remote method invocations.
+     */
+    private final StringPool strings;
+    private final Statistics statistics = new Statistics();
+    private volatile Recorder recorder;
+    private String name;
+    private ScriptCache scriptCache;
+    private final ClassPrepareMultiplexer classPrepares = new ClassPrepareMultiplexer(this);
+    private StartupTimes startupTimes;
+    private volatile int invokeOptions = ObjectReference.INVOKE_SINGLE_THREADED;
+    /**
+     * Overrides {@link #invokeOptions} within {@link #withInvokeOptions(int, Closure)}.
+     */
+    private final ThreadLocal<Integer> scopedInvokeOptions = new ThreadLocal<Integer>();
 
     public VM(VirtualMachine vm) {
         this.vm = vm;
         q = vm.eventQueue();
         req = vm.eventRequestManager();
+
+        // keep the thread list up to date. enable these before listing the threads so that we won't miss any
+        for (EventRequest r : [req.createThreadStartRequest(), req.createThreadDeathRequest()]) {
+            r.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            r.enable();
+        }
         threads = new ThreadList(vm);
+        strings = new StringPool(vm,STRING_POOL_SIZE);
+
+        // unloaded classes make the cached type information stale
+        ClassUnloadRequest cur = req.createClassUnloadRequest();
+        cur.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        registerHandler(cur) { ClassUnloadEvent e ->
+            typeCache.clear();
+            threadDumper.clear();
+            classPrepares.onClassUnload(e.className());
+        };
+        cur.enable();
     }
 
     /**
@@ -65,6 +117,13 @@ public class VM implements Closeable {
         return threads;
     }
 
+    /**
+     * Hit counts and latencies of the event requests, for finding out how much the script is costing the target JVM.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Access to the underlying JDI {@link VirtualMachine} object.
      * Use this method when you want to go down to JDI.
@@ -75,22 +134,134 @@ public class VM implements Closeable {
         return vm;
     }
 
+    /**
+     * Name of the target JVM, such as its PID or its socket address, used to tell apart the output
+     * when one debugger is attached to multiple JVMs.
+     *
+     * @return null if not set.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Where compiled scripts are kept, so that {@link #execute(GroovyCodeSource, Map)} can skip
+     * the compilation of the script it has seen before.
+     *
+     * @return null if scripts are compiled every time.
+     */
+    public ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    public void setScriptCache(ScriptCache scriptCache) {
+        this.scriptCache = scriptCache;
+    }
+
+    /**
+     * If set, the compilation of the script and the installation of its first event request are timed there.
+     */
+    public StartupTimes getStartupTimes() {
+        return startupTimes;
+    }
+
+    public void setStartupTimes(StartupTimes startupTimes) {
+        this.startupTimes = startupTimes;
+    }
+
+    /**
+     * Options of the method invocations that scripts make on remote objects and classes,
+     * as in {@link ObjectReference#invokeMethod(ThreadReference, Method, List, int)}.
+     *
+     * <p>
+     * Defaults to {@link ObjectReference#INVOKE_SINGLE_THREADED}, so that only the invoking thread runs during
+     * the invocation, instead of every thread in the target JVM being resumed and suspended again.
+     * Set this to 0 if the methods to invoke need other threads to make progress, such as when they wait for a lock
+     * held by another suspended thread.
+     */
+    public int getInvokeOptions() {
+        Integer o = scopedInvokeOptions.get();
+        return o!=null ? o : invokeOptions;
+    }
+
+    public void setInvokeOptions(int invokeOptions) {
+        this.invokeOptions = invokeOptions;
+    }
+
+    /**
+     * Runs the closure with different {@linkplain #getInvokeOptions() invocation options} for the remote method
+     * invocations it makes from the current thread.
+     *
+     * <pre>
+     * vm.withInvokeOptions(0) { server.shutdown() }   // let other threads run
+     * </pre>
+     */
+    public Object withInvokeOptions(int options, Closure body) {
+        Integer old = scopedInvokeOptions.get();
+        scopedInvokeOptions.set(options);
+        try {
+            return body.call();
+        } finally {
+            scopedInvokeOptions.set(old);
+        }
+    }
+
     /**
      * Returns the thread that raised the current event.
      * For example, if the caller is a closure for a break point, this method
      * returns the thread that hit the breakpoint.
      */
     public ThreadReference getCurrentThread() {
-        if (currentEvent instanceof LocatableEvent)
-            return ((LocatableEvent) currentEvent).thread();
+        Event e = currentEvent.get();
+        if (e instanceof LocatableEvent)
+            return ((LocatableEvent) e).thread();
         return null;
     }
 
     /**
      * Returns the current debugger event that we are dispatching.
+     *
+     * <p>
+     * When handlers run in parallel, this is the event that the calling handler is processing.
      */
     public Event getCurrentEvent() {
-        return currentEvent;
+        return currentEvent.get();
+    }
+
+    /**
+     * Number of threads used to run event handlers, or 0 if handlers run on the thread that
+     * calls {@link #dispatchEvents()}.
+     */
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    /**
+     * Runs event handlers on a pool of the given number of threads, instead of the thread that calls
+     * {@link #dispatchEvents()}.
+     *
+     * <p>
+     * Events from the same target thread are still handled one at a time in the order they occurred,
+     * but events from different threads are handled concurrently, so that one slow handler doesn't hold
+     * up the rest of the target JVM. To make this possible, breakpoints created after this call only
+     * suspend the thread that hit them, instead of the whole JVM.
+     *
+     * <pre>
+     * vm.dispatchThreads = 4
+     * </pre>
+     *
+     * This needs to be set before {@link #dispatchEvents()} starts, which normally means at the top of the script.
+     *
+     * @param n
+     *      0 to go back to the default single-threaded behaviour.
+     */
+    public void setDispatchThreads(int n) {
+        if (n<0)    throw new IllegalArgumentException("Invalid number of threads: "+n);
+        dispatchThreads = n;
     }
 
     /**
@@ -100,51 +271,153 @@ public class VM implements Closeable {
     public void dispatchEvents() throws InterruptedException {
         final VM old = CURRENT.get();
         CURRENT.set(this);
+        KeyedExecutor workers = dispatchThreads>0 ? createWorkers(dispatchThreads) : null;
         try {
             while (true) {
                 EventSet es = q.remove();
-                for (Event e : es) {
-                    if (LOGGER.isLoggable(Level.FINER))
-                        LOGGER.finer("Received event "+e);
-
-                    currentEvent = e;
-                    Closure h = HANDLER.get(e);
-                    if (h!=null) {
-                        h(e);
-                        continue;
-                    }
+                long received = System.nanoTime();
+                statistics.onEventSet(es.size());
+                ThreadReference t = workers!=null ? threadOf(es) : null;
+                if (t!=null)
+                    dispatchAsync(workers,t,es,received);
+                else if (!dispatch(es,received))
+                    return;
+            }
+        } catch (VMDisconnectedException e) {
+            LOGGER.log(Level.INFO, "Target JVM  disconnected",e);
+        } finally {
+            if (workers!=null)
+                workers.shutdown();
+            CURRENT.set(old);
+        }
+    }
 
-                    if (e instanceof ThreadStartEvent) {
-                        handleThreadStart((ThreadStartEvent) e);
-                        continue;
-                    }
-                    if (e instanceof ThreadDeathEvent) {
-                        handleThreadDeath((ThreadDeathEvent) e);
-                        continue;
-                    }
-                    if (e instanceof VMStartEvent) {
-                        LOGGER.fine("Application started");
+    /**
+     * Invokes the handlers of all the events in the given set, then resumes the set.
+     *
+     * @param received
+     *      {@link System#nanoTime()} when the event set was taken from the queue.
+     * @return
+     *      false if the debug session has ended and no further events should be dispatched.
+     */
+    private boolean dispatch(EventSet es, long received) {
+        List<Closure> deferred = [];
+        afterResume.set(deferred);
+        ValueCache.open();
+        try {
+            for (Event e : es) {
+                if (LOGGER.isLoggable(Level.FINER))
+                    LOGGER.finer("Received event "+e);
+
+                currentEvent.set(e);
+                Closure h = HANDLER.get(e);
+                if (h!=null) {
+                    Throttle th = THROTTLE.get(e);
+                    if (th!=null && !th.admit(e.request()))
                         continue;
+                    RequestStatistics stats = STATS.get(e);
+                    long start = System.nanoTime();
+                    try {
+                        h(e);
+                    } finally {
+                        stats?.onHandled(System.nanoTime()-start);
                     }
-                    if (e instanceof VMDeathEvent) {
-                        LOGGER.fine("Application exited");
-                        return; // peacefully terminate the execution
-                    }
-                    if (e instanceof VMDisconnectEvent) {
-                        LOGGER.fine("Debug session has disconnected");
-                        return; // peacefully terminate the execution
-                    }
+                    continue;
+                }
 
-                    LOGGER.info("Unhandled event type: "+e);
+                if (e instanceof ThreadStartEvent) {
+                    handleThreadStart((ThreadStartEvent) e);
+                    continue;
+                }
+                if (e instanceof ThreadDeathEvent) {
+                    handleThreadDeath((ThreadDeathEvent) e);
+                    continue;
+                }
+                if (e instanceof VMStartEvent) {
+                    LOGGER.fine("Application started");
+                    continue;
+                }
+                if (e instanceof VMDeathEvent) {
+                    LOGGER.fine("Application exited");
+                    return false; // peacefully terminate the execution
+                }
+                if (e instanceof VMDisconnectEvent) {
+                    LOGGER.fine("Debug session has disconnected");
+                    return false; // peacefully terminate the execution
                 }
-                currentEvent = null;
-                es.resume();
+
+                LOGGER.info("Unhandled event type: "+e);
             }
-        } catch (VMDisconnectedException e) {
-            LOGGER.log(Level.INFO, "Target JVM  disconnected",e);
         } finally {
-            CURRENT.set(old);
+            currentEvent.remove();
+            afterResume.remove();
+            ValueCache.close();
+        }
+        es.resume();
+        if (es.suspendPolicy()!=EventRequest.SUSPEND_NONE) {
+            long suspended = System.nanoTime()-received;
+            for (Event e : es)
+                STATS.get(e)?.onResumed(suspended);
         }
+        for (Closure c : deferred) {
+            // the event set is already resumed, so a failure here must not reach the caller, which would resume it again
+            try {
+                c.call();
+            } catch (VMDisconnectedException e) {
+                throw e;
+            } catch (Exception x) {
+                LOGGER.log(Level.WARNING, "Deferred event handler failed for "+es,x);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands the event set over to the workers, behind the earlier event sets of the given target thread.
+     */
+    private void dispatchAsync(KeyedExecutor workers, ThreadReference t, EventSet es, long received) {
+        workers.execute(t, {
+            try {
+                dispatch(es,received);
+            } catch (VMDisconnectedException e) {
+                LOGGER.log(Level.FINE, "Target JVM disconnected",e);
+            } catch (Throwable x) {
+                // dispatch() doesn't let failures through once it has resumed the set
+                LOGGER.log(Level.WARNING, "Event handler failed for "+es,x);
+                es.resume(); // don't leave the target thread suspended forever
+            }
+        } as Runnable);
+    }
+
+    private KeyedExecutor createWorkers(int n) {
+        int id=0;
+        ThreadFactory tf = { Runnable r ->
+            Thread t = new Thread({
+                CURRENT.set(_this());
+                use(JDICategory) {
+                    r.run();
+                }
+            } as Runnable, "YouDebug event dispatcher #"+(++id));
+            t.daemon = true;
+            return t;
+        } as ThreadFactory;
+        return new KeyedExecutor(n,tf);
+    }
+
+    /**
+     * Determines the target thread that the events in the given set are about.
+     *
+     * @return
+     *      null if the event set isn't specific to any one thread, such as VM death.
+     */
+    private static ThreadReference threadOf(EventSet es) {
+        for (Event e : es) {
+            if (e instanceof LocatableEvent)    return ((LocatableEvent)e).thread();
+            if (e instanceof ClassPrepareEvent) return ((ClassPrepareEvent)e).thread();
+            if (e instanceof ThreadStartEvent)  return ((ThreadStartEvent)e).thread();
+            if (e instanceof ThreadDeathEvent)  return ((ThreadDeathEvent)e).thread();
+        }
+        return null;
     }
 
     /**
@@ -164,9 +437,7 @@ public class VM implements Closeable {
         ClassPrepareRequest r = req.createClassPrepareRequest();
         r.addClassFilter(name);
         registerHandler(r) { ClassPrepareEvent event ->
-            body.delegate = event.thread();
-            body.resolveStrategy = Closure.DELEGATE_FIRST;
-            body.call(event.referenceType());
+            bind(body,event.thread()).call(event.referenceType());
         };
         r.enable();
         return r;
@@ -213,29 +484,144 @@ public class VM implements Closeable {
      * a remote reference {@link ReferenceType}.
      */
     public BundledBreakpointRequest breakpoint(ReferenceType type, int line, final Closure body) throws AbsentInformationException {
+        return breakpoint([:],type,line,body);
+    }
+
+    /**
+     * Sets a break point at the specified line in the specified class, with options.
+     *
+     * <pre>
+     * vm.breakpoint("org.acme.Foo",42,when:{ id==17 &amp;&amp; retries>3 }) {
+     *   dumpAllThreads();
+     * }
+     * </pre>
+     *
+     * @param options
+     *      'when' is a closure that decides whether to invoke the body. It can read variables just like the body,
+     *      and those variables are fetched in a batch, so the breakpoint costs little when the condition doesn't hold.
+     *      'sample' is the fraction of the hits to report. For example, 0.01 reports every 100th hit.
+     *      The hits in between are skipped inside the target JVM, so they cost nothing.
+     *      'maxPerSecond' disables the breakpoint for 'cooldown' milliseconds (defaults to 1000)
+     *      once it hits this many times within a second.
+     *      These keep a breakpoint in a hot code path from bringing the target JVM to a crawl.
+     *      When the class name matches multiple classes, all the breakpoints share one budget.
+     */
+    public BundledBreakpointRequest breakpoint(Map options, String className, int line, final Closure body) throws AbsentInformationException {
+        options = shareThrottle(options);
+        List<BreakpointRequest> bpreqs = [];
+        def r = forEachClass(className) { ReferenceType t ->
+            bpreqs.add(breakpoint(options,t,line,body));
+        }
+        return new BundledBreakpointRequest(r,bpreqs);
+    }
+
+    /**
+     * Same as {@link #breakpoint(Map, String, int, Closure)} except you specify the class by using
+     * a remote reference {@link ReferenceType}.
+     */
+    public BundledBreakpointRequest breakpoint(Map options, ReferenceType type, int line, final Closure body) throws AbsentInformationException {
+        Closure handler = noArgHandler(body);
+        if (options.when!=null)
+            handler = conditional(new Condition(options.when as Closure),handler);
+        return lineBreakpoint(type,line,throttleOf(options),handler);
+    }
+
+    /**
+     * Sets a break point at the specified line in the specified class.
+     *
+     * @param throttle
+     *      Limits how often the handler runs, if non-null.
+     * @param handler
+     *      Invoked with the {@link BreakpointEvent}.
+     */
+    private BundledBreakpointRequest lineBreakpoint(ReferenceType type, int line, Throttle throttle, Closure handler) throws AbsentInformationException {
         List<BreakpointRequest> bps = [];
         for (Location loc : type.locationsOfLine(line)) {
             BreakpointRequest bp = req.createBreakpointRequest(loc);
-            registerNoArgHandler(bp,body);
+            registerHandler(bp,throttle,handler);
             bp.enable();
             bps.add(bp);
         }
         return new BundledBreakpointRequest(null,bps);
     }
 
+    /**
+     * Sets a break point that copies variables into a {@link Snapshot} and resumes the thread,
+     * then invokes the closure with the snapshot.
+     *
+     * <p>
+     * Unlike {@link #breakpoint(String, int, Closure)}, the target thread is only suspended for
+     * the few batched reads it takes to capture the variables, no matter how long the closure takes.
+     * In return, the closure can't modify the target JVM or invoke methods in the context of the thread.
+     * Only the thread that hit the breakpoint is suspended.
+     *
+     * <pre>
+     * vm.snapshotBreakpoint("org.acme.Foo",42,frames:2,statics:["counter"]) { s ->
+     *   println "${s.threadName}: x=${s.x} caller's y=${s.frames[1].y} counter=${s.counter}"
+     * }
+     * </pre>
+     *
+     * @param options
+     *      'frames' is the number of stack frames to capture local variables from (defaults to 1.)
+     *      'self' controls whether fields of 'this' are captured (defaults to true.)
+     *      'statics' is the names of the static fields of the class to capture.
+     *      'maxPerSecond', 'sample', and 'cooldown' limit how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public BundledBreakpointRequest snapshotBreakpoint(Map options, String className, int line, Closure body) throws AbsentInformationException {
+        options = shareThrottle(options);
+        List<BreakpointRequest> bpreqs = [];
+        def r = forEachClass(className) { ReferenceType t ->
+            bpreqs.add(snapshotBreakpoint(options,t,line,body));
+        }
+        return new BundledBreakpointRequest(r,bpreqs);
+    }
+
+    /**
+     * Same as {@link #snapshotBreakpoint(Map, String, int, Closure)} except you specify the class by using
+     * a remote reference {@link ReferenceType}.
+     */
+    public BundledBreakpointRequest snapshotBreakpoint(Map options, ReferenceType type, int line, Closure body) throws AbsentInformationException {
+        int depth = options.frames!=null ? options.frames as int : 1;
+        boolean self = options.self!=null ? options.self as boolean : true;
+        Collection<String> statics = options.statics ?: [];
+
+        def bp = lineBreakpoint(type,line,throttleOf(options)) { BreakpointEvent e ->
+            Snapshot s = Snapshot.capture(e.thread(),depth,self,statics);
+            runAfterResume { body.call(s) };
+        };
+        bp.disable();
+        bp.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        bp.enable();
+        return bp;
+    }
+
+    /**
+     * Short for {@code snapshotBreakpoint([:],className,line,body)}, which captures local variables
+     * of the top stack frame and fields of 'this'.
+     */
+    public BundledBreakpointRequest snapshotBreakpoint(String className, int line, Closure body) throws AbsentInformationException {
+        return snapshotBreakpoint([:],className,line,body);
+    }
+
     /**
      * Same as {@link #exceptionBreakpoint(String, Collection<org.kohsuke.youdebug.ExceptionBreakpointModifier>, Closure)}
      * except you specify the exception type by a remote reference of the type.
      */
     public ExceptionRequest exceptionBreakpoint(ReferenceType exceptionClass, Collection<ExceptionBreakpointModifier> modifiers, Closure body) {
+        return exceptionBreakpoint([:],exceptionClass,modifiers,body);
+    }
+
+    /**
+     * Same as {@link #exceptionBreakpoint(ReferenceType, Collection<org.kohsuke.youdebug.ExceptionBreakpointModifier>, Closure)}
+     * with options to limit how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public ExceptionRequest exceptionBreakpoint(Map options, ReferenceType exceptionClass, Collection<ExceptionBreakpointModifier> modifiers, Closure body) {
         // default to all situations, since "none" isn't useful
         if (modifiers==null || modifiers.isEmpty())    modifiers = EnumSet.allOf(ExceptionBreakpointModifier.class);
 
         ExceptionRequest q = req.createExceptionRequest(exceptionClass, modifiers.contains(CAUGHT), modifiers.contains(UNCAUGHT));
-        registerHandler(q) { ExceptionEvent e ->
-            body.delegate = new EventDelegate(e.thread());
-            body.resolveStrategy = Closure.DELEGATE_FIRST
-            body.call(e.exception());
+        registerHandler(q,throttleOf(options)) { ExceptionEvent e ->
+            bind(body,new EventDelegate(e.thread())).call(e.exception());
         };
         q.enable();
         return q;
@@ -255,9 +641,18 @@ public class VM implements Closeable {
      *      If this is null or empty, both kinds of exceptions are caught.
      */
     public ExceptionRequest exceptionBreakpoint(String className, Collection<ExceptionBreakpointModifier> modifiers, Closure c) {
+        return exceptionBreakpoint([:],className,modifiers,c);
+    }
+
+    /**
+     * Same as {@link #exceptionBreakpoint(String, Collection<org.kohsuke.youdebug.ExceptionBreakpointModifier>, Closure)}
+     * with options to limit how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public ExceptionRequest exceptionBreakpoint(Map options, String className, Collection<ExceptionBreakpointModifier> modifiers, Closure c) {
+        options = shareThrottle(options);
         List<ExceptionRequest> bpreqs = [];
         def r = forEachClass(className) { ReferenceType t ->
-            bpreqs.add(exceptionBreakpoint(t,modifiers,c));
+            bpreqs.add(exceptionBreakpoint(options,t,modifiers,c));
         }
         return new BundledExceptionRequest(r,bpreqs);
     }
@@ -291,6 +686,15 @@ public class VM implements Closeable {
         return exceptionBreakpoint(exceptionClass,EnumSet.allOf(ExceptionBreakpointModifier.class),c);
     }
 
+    /**
+     * Sets a {@link MethodEntryRequest} that hits when a method of the given name in the given class is entered.
+     * The closure receives the {@link Method} that's invoked.
+     *
+     * <p>
+     * The target JVM reports the entry of every method of the class and the name is checked here,
+     * so this slows down the target considerably. See {@link #methodStartBreakpoint(ReferenceType, String, Closure)}
+     * for a breakpoint that only hits for the method in question.
+     */
     public MethodEntryRequest methodEntryBreakpoint(ReferenceType type, String methodName, Closure body) {
         MethodEntryRequest q = createMethodEntryRequest(methodName,body);
         q.addClassFilter(type);
@@ -309,14 +713,21 @@ public class VM implements Closeable {
         MethodEntryRequest q = req.createMethodEntryRequest()
         registerHandler(q) { MethodEntryEvent e ->
             if (e.method().name() == methodName) {
-                body.delegate = new EventDelegate(e.thread());
-                body.resolveStrategy = Closure.DELEGATE_FIRST
-                body.call(e.method());
+                bind(body,new EventDelegate(e.thread())).call(e.method());
             }
         }
         return q;
     }
 
+    /**
+     * Sets a {@link MethodExitRequest} that hits when a method of the given name in the given class returns.
+     * The closure receives the return value.
+     *
+     * <p>
+     * The target JVM reports the exit of every method of the class and the name is checked here,
+     * so this slows down the target considerably. See {@link #methodReturnBreakpoint(ReferenceType, String, Closure)}
+     * for a cheaper alternative.
+     */
     public MethodExitRequest methodExitBreakpoint(ReferenceType type, String methodName, Closure body) {
         MethodExitRequest q = createMethodExitRequest(methodName,body);
         q.addClassFilter(type);
@@ -335,20 +746,186 @@ public class VM implements Closeable {
         MethodExitRequest q = req.createMethodExitRequest()
         registerHandler(q) { MethodExitEvent e ->
             if (e.method().name() == methodName) {
-                body.delegate = new EventDelegate(e.thread());
-                body.resolveStrategy = Closure.DELEGATE_FIRST
-                body.call(e.returnValue());
+                bind(body,new EventDelegate(e.thread())).call(e.returnValue());
             }
         }
         return q;
     }
 
+    /**
+     * Sets a breakpoint that hits when a method of the given name in the given class is entered.
+     * The closure receives the {@link Method} that's invoked.
+     *
+     * <p>
+     * This sets a breakpoint at the beginning of each method of the given name, so unlike
+     * {@link #methodEntryBreakpoint(ReferenceType, String, Closure)}, invocations of other methods
+     * don't cause any communication with the target JVM.
+     *
+     * <p>
+     * If the method starts with a loop, the breakpoint also hits on each iteration. Those hits are told apart
+     * from new invocations by watching the method return, which costs as much as {@link #methodReturnBreakpoint}.
+     * They still count toward the limits in the options.
+     */
+    public BundledBreakpointRequest methodStartBreakpoint(ReferenceType type, String methodName, Closure body) {
+        return methodStartBreakpoint([:],type,methodName,body);
+    }
+
+    /**
+     * Same as {@link #methodStartBreakpoint(ReferenceType, String, Closure)} with options to limit
+     * how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public BundledBreakpointRequest methodStartBreakpoint(Map options, ReferenceType type, String methodName, Closure body) {
+        return methodBreakpoints(type,methodName,throttleOf(options)) { BreakpointEvent e, Method m ->
+            bind(body,new EventDelegate(e.thread())).call(m);
+        };
+    }
+
+    /**
+     * Same as {@link #methodStartBreakpoint(ReferenceType, String, Closure)} except you specify the class by name.
+     * The breakpoint also applies to classes of the given name that are loaded later.
+     */
+    public BundledBreakpointRequest methodStartBreakpoint(String type, String methodName, Closure body) {
+        return methodStartBreakpoint([:],type,methodName,body);
+    }
+
+    /**
+     * Same as {@link #methodStartBreakpoint(String, String, Closure)} with options to limit
+     * how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public BundledBreakpointRequest methodStartBreakpoint(Map options, String type, String methodName, Closure body) {
+        options = shareThrottle(options);
+        List<BreakpointRequest> bpreqs = [];
+        def r = forEachClass(type) { ReferenceType t ->
+            bpreqs.add(methodStartBreakpoint(options,t,methodName,body));
+        }
+        return new BundledBreakpointRequest(r,bpreqs);
+    }
+
+    /**
+     * Sets a breakpoint that hits when a method of the given name in the given class returns.
+     * The closure receives the return value.
+     *
+     * <p>
+     * The returned request represents the breakpoints at the beginning of the methods. Each time one of them
+     * hits, a {@link MethodExitRequest} restricted to that thread is created to catch the return from that
+     * particular invocation, then deleted. So unlike {@link #methodExitBreakpoint(ReferenceType, String, Closure)},
+     * invocations of other methods only cause communication with the target JVM while the method in question
+     * is on the stack.
+     */
+    public BundledBreakpointRequest methodReturnBreakpoint(ReferenceType type, String methodName, Closure body) {
+        return methodReturnBreakpoint([:],type,methodName,body);
+    }
+
+    /**
+     * Same as {@link #methodReturnBreakpoint(ReferenceType, String, Closure)} with options to limit
+     * how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     * The limit applies to the invocations of the method, so returns from sampled-out invocations aren't watched.
+     */
+    public BundledBreakpointRequest methodReturnBreakpoint(Map options, ReferenceType type, String methodName, Closure body) {
+        return methodBreakpoints(type,methodName,throttleOf(options)) { BreakpointEvent e, Method m ->
+            ThreadReference t = e.thread();
+            watchReturn(t,t.frameCount(),m) { MethodExitEvent x ->
+                bind(body,new EventDelegate(x.thread())).call(x.returnValue());
+            };
+        };
+    }
+
+    /**
+     * Same as {@link #methodReturnBreakpoint(ReferenceType, String, Closure)} except you specify the class by name.
+     * The breakpoint also applies to classes of the given name that are loaded later.
+     */
+    public BundledBreakpointRequest methodReturnBreakpoint(String type, String methodName, Closure body) {
+        return methodReturnBreakpoint([:],type,methodName,body);
+    }
+
+    /**
+     * Same as {@link #methodReturnBreakpoint(String, String, Closure)} with options to limit
+     * how often the breakpoint hits. See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public BundledBreakpointRequest methodReturnBreakpoint(Map options, String type, String methodName, Closure body) {
+        options = shareThrottle(options);
+        List<BreakpointRequest> bpreqs = [];
+        def r = forEachClass(type) { ReferenceType t ->
+            bpreqs.add(methodReturnBreakpoint(options,t,methodName,body));
+        }
+        return new BundledBreakpointRequest(r,bpreqs);
+    }
+
+    /**
+     * Sets a breakpoint at the beginning of every method of the given name declared in the given type.
+     *
+     * @param handler
+     *      Invoked with the {@link BreakpointEvent} and the {@link Method}, once per invocation.
+     */
+    private BundledBreakpointRequest methodBreakpoints(ReferenceType type, String methodName, Throttle throttle, Closure handler) {
+        List<BreakpointRequest> bps = [];
+        for (Method m : type.methodsByName(methodName)) {
+            if (m.declaringType()!=type || m.isAbstract() || m.isNative())
+                continue;   // inherited or no code to set a breakpoint to
+            bps.add(methodBreakpoint(m,throttle,handler));
+        }
+        return new BundledBreakpointRequest(null,bps);
+    }
+
+    private BreakpointRequest methodBreakpoint(Method m, Throttle throttle, Closure handler) {
+        Location start = m.location();
+        BreakpointRequest bp = req.createBreakpointRequest(start);
+        if (BranchTargets.isBranchTarget(m,(int)start.codeIndex())) {
+            // the method starts with a loop, so the breakpoint also hits on every iteration.
+            // remember the frames that are already in the method until they return, to only report new invocations
+            Set<String> inside = Collections.synchronizedSet(new HashSet<String>());
+            registerHandler(bp,throttle) { BreakpointEvent e ->
+                ThreadReference t = e.thread();
+                int depth = t.frameCount();
+                String frame = t.uniqueID()+":"+depth;
+                if (!inside.add(frame))
+                    return;     // another iteration
+                watchReturn(t,depth,m) { MethodExitEvent x -> inside.remove(frame) };
+                handler(e,m);
+            };
+        } else {
+            registerHandler(bp,throttle) { BreakpointEvent e ->
+                handler(e,m);
+            };
+        }
+        bp.enable();
+        return bp;
+    }
+
+    /**
+     * Invokes the closure with the {@link MethodExitEvent} when the invocation of the given method
+     * at the given stack depth of the given thread returns.
+     */
+    private void watchReturn(ThreadReference t, int depth, Method m, Closure onReturn) {
+        MethodExitRequest q = req.createMethodExitRequest();
+        q.addThreadFilter(t);
+        q.addClassFilter(m.declaringType());
+        // one of these per invocation, so keep them out of the per-request statistics
+        registerInternalHandler(q) { MethodExitEvent e ->
+            if (e.method()!=m)
+                return;     // checked first, as frameCount() is another round trip
+            if (e.thread().frameCount()!=depth)
+                return;     // a recursive invocation
+            req.deleteEventRequest(q);
+            onReturn(e);
+        }
+        q.enable();
+    }
+
     /**
      * Sets a breakpoint that fires when the specified field is read.
      */
     public AccessWatchpointRequest accessWatchpoint(Field f, Closure body) {
+        return accessWatchpoint([:],f,body);
+    }
+
+    /**
+     * Same as {@link #accessWatchpoint(Field, Closure)} with options to limit how often the breakpoint hits.
+     * See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public AccessWatchpointRequest accessWatchpoint(Map options, Field f, Closure body) {
         def awp = req.createAccessWatchpointRequest(f)
-        registerNoArgHandler(awp,body);
+        registerNoArgHandler(awp,throttleOf(options),body);
         awp.enable();
         return awp;
     }
@@ -357,11 +934,20 @@ public class VM implements Closeable {
      * Sets a breakpoint that fires when the specified field of the specified class is read.
      */
     public AccessWatchpointRequest accessWatchpoint(String className, String fieldName, Closure body) {
+        return accessWatchpoint([:],className,fieldName,body);
+    }
+
+    /**
+     * Same as {@link #accessWatchpoint(String, String, Closure)} with options to limit how often the breakpoint hits.
+     * See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public AccessWatchpointRequest accessWatchpoint(Map options, String className, String fieldName, Closure body) {
+        options = shareThrottle(options);
         List reqs = [];
         def r = forEachClass(className) { ReferenceType t ->
             def f = t.fieldByName(fieldName);
             if (f!=null)
-                reqs.add(accessWatchpoint(f,body));
+                reqs.add(accessWatchpoint(options,f,body));
         }
         return new BundledWatchpointRequest(r,reqs);
     }
@@ -377,8 +963,16 @@ public class VM implements Closeable {
      * Sets a breakpoint that fires when the specified field is updated.
      */
     public ModificationWatchpointRequest modificationWatchpoint(Field f, Closure body) {
+        return modificationWatchpoint([:],f,body);
+    }
+
+    /**
+     * Same as {@link #modificationWatchpoint(Field, Closure)} with options to limit how often the breakpoint hits.
+     * See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public ModificationWatchpointRequest modificationWatchpoint(Map options, Field f, Closure body) {
         def awp = req.createModificationWatchpointRequest(f)
-        registerNoArgHandler(awp,body);
+        registerNoArgHandler(awp,throttleOf(options),body);
         awp.enable();
         return awp;
     }
@@ -387,11 +981,20 @@ public class VM implements Closeable {
      * Sets a breakpoint that fires when the specified field of the specified class is updated.
      */
     public AccessWatchpointRequest modificationWatchpoint(String className, String fieldName, Closure body) {
+        return modificationWatchpoint([:],className,fieldName,body);
+    }
+
+    /**
+     * Same as {@link #modificationWatchpoint(String, String, Closure)} with options to limit how often the breakpoint hits.
+     * See {@link #breakpoint(Map, String, int, Closure)}.
+     */
+    public AccessWatchpointRequest modificationWatchpoint(Map options, String className, String fieldName, Closure body) {
+        options = shareThrottle(options);
         List reqs = [];
         def r = forEachClass(className) { ReferenceType t ->
             def f = t.fieldByName(fieldName);
             if (f!=null)
-                reqs.add(modificationWatchpoint(f,body));
+                reqs.add(modificationWatchpoint(options,f,body));
         }
         return new BundledWatchpointRequest(r,reqs);
     }
@@ -403,18 +1006,102 @@ public class VM implements Closeable {
         return modificationWatchpoint(c.name,fieldName,body);
     }
 
+    /**
+     * Returns a copy of the closure that resolves unqualified names against the given delegate.
+     *
+     * The closure is copied so that handlers running concurrently on different dispatcher threads
+     * don't overwrite each other's delegate.
+     */
+    private Closure bind(Closure body, Object delegate) {
+        Closure c = (Closure)body.clone();
+        c.delegate = delegate;
+        c.resolveStrategy = Closure.DELEGATE_FIRST;
+        return c;
+    }
+
     private void registerHandler(EventRequest q, Closure body) {
+        if (startupTimes!=null && (startupTimes.isMarked(StartupTimes.COMPILE) || startupTimes.isMarked(StartupTimes.COMPILE_CACHED)))
+            startupTimes.mark(StartupTimes.FIRST_REQUEST);
+        STATS[q] = statistics.of(q);
+        registerInternalHandler(q,body);
+    }
+
+    /**
+     * Registers the handler of a request that the debugger creates for its own purpose,
+     * without the per-request statistics.
+     */
+    private void registerInternalHandler(EventRequest q, Closure body) {
         HANDLER[q] = body;
+        // with parallel dispatching, only stop the thread that hit the event so that others can be handled concurrently
+        if (dispatchThreads>0 && q.suspendPolicy()==EventRequest.SUSPEND_ALL)
+            q.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+    }
+
+    /**
+     * Registers the handler, and puts the request under the throttle if it's non-null.
+     * The request needs to be disabled.
+     */
+    private void registerHandler(EventRequest q, Throttle throttle, Closure body) {
+        registerHandler(q,body);
+        if (throttle!=null) {
+            THROTTLE[q] = throttle;
+            throttle.govern(q);
+        }
     }
 
     private void registerNoArgHandler(EventRequest q, Closure body) {
-        registerHandler(q) { LocatableEvent e ->
-            body.delegate = new EventDelegate(e.thread());
-            body.resolveStrategy = Closure.DELEGATE_FIRST
-            body.call();
+        registerHandler(q,noArgHandler(body));
+    }
+
+    private void registerNoArgHandler(EventRequest q, Throttle throttle, Closure body) {
+        registerHandler(q,throttle,noArgHandler(body));
+    }
+
+    /**
+     * Gets the throttle that the options ask for, if any.
+     */
+    private Throttle throttleOf(Map options) {
+        return options.throttle ?: Throttle.of(options);
+    }
+
+    /**
+     * Creates the throttle that the options ask for upfront, so that all the requests created
+     * with the returned options share one.
+     */
+    private Map shareThrottle(Map options) {
+        Throttle th = throttleOf(options);
+        return th!=null ? options+[throttle:th] : options;
+    }
+
+    /**
+     * Adapts a breakpoint closure that takes no argument and uses {@link EventDelegate} into a handler.
+     */
+    private Closure noArgHandler(Closure body) {
+        return { LocatableEvent e ->
+            bind(body,new EventDelegate(e.thread())).call();
+        };
+    }
+
+    /**
+     * Adapts a handler so that it's only invoked when the condition holds.
+     */
+    private Closure conditional(Condition condition, Closure handler) {
+        return { LocatableEvent e ->
+            if (condition.test(e.thread()))
+                handler.call(e);
         };
     }
 
+    /**
+     * Called from an event handler to run the given closure after the event set is resumed.
+     * If called outside the event dispatching, the closure is run right away.
+     */
+    private void runAfterResume(Closure c) {
+        List<Closure> l = afterResume.get();
+        if (l!=null)    l.add(c);
+        else            c.call();
+    }
+
     /**
      * Resolves a class by the name.
      *
@@ -475,9 +1162,7 @@ public class VM implements Closeable {
             return ref(c)
         } catch (IllegalArgumentException e) {
             // force load
-            def cl = currentThread.frame(0).location().declaringType().classLoader();
-            if (cl==null)   cl=ref(ClassLoader).getSystemClassLoader();
-            def clazz = cl.loadClass(c, true)
+            def clazz = targetClassLoader().loadClass(c, true)
             clazz.getMethods(); // force preparation
             return clazz.reflectedType();
         };
@@ -487,6 +1172,55 @@ public class VM implements Closeable {
         return loadClass(c.name);
     }
 
+    /**
+     * Defines a class of the debugger in the target JVM, from its class file, so that a script can run
+     * its own code there. For example, a static method that aggregates a large data structure can return
+     * just the result in one invocation, instead of the script walking it one remote call at a time.
+     *
+     * <pre>
+     * def stats = vm.inject(CacheStats.class)
+     * println stats.summarize(cache)
+     * </pre>
+     *
+     * <p>
+     * The class is defined in the class loader of the code that raised the current event, or the system class loader,
+     * and it can only use classes visible from there. Nested classes aren't injected along with it.
+     * If the class is already there, it's returned as is.
+     */
+    public ClassType inject(Class c) {
+        ObjectReference cl = targetClassLoader();
+        for (ReferenceType t : vm.classesByName(c.name))
+            if (t.classLoader()==cl)
+                return (ClassType)t;
+
+        InputStream i = c.getResourceAsStream("/"+c.name.replace('.','/')+".class");
+        if (i==null)    throw new IllegalArgumentException("No class file for "+c.name);
+        byte[] image = IOUtil.readFully(i);
+
+        ArrayReference a = ((ArrayType)vm.classesByName("byte[]")[0]).newInstance(image.length);
+        a.disableCollection();  // until defineClass is done with it
+        try {
+            a.setValues(image.collect { byte b -> vm.mirrorOf(b) });
+            Method m = cl.referenceType().methodsByName("defineClass","(Ljava/lang/String;[BII)Ljava/lang/Class;")[0];
+            ValueCache.invalidate();
+            cl.invokeMethod(currentThread, m, [strings.mirrorOf(c.name),a,vm.mirrorOf(0),vm.mirrorOf(image.length)], getInvokeOptions());
+        } finally {
+            a.enableCollection();
+        }
+        // initialize it, so that its static methods can be invoked
+        return (ClassType)ref(Class).forName(c.name,true,cl).reflectedType();
+    }
+
+    /**
+     * Class loader to load classes in, which is that of the code that raised the current event,
+     * or the system class loader.
+     */
+    private ObjectReference targetClassLoader() {
+        def cl = currentThread.frame(0).location().declaringType().classLoader();
+        if (cl==null)   cl=ref(ClassLoader).getSystemClassLoader();
+        return cl;
+    }
+
     /**
      * Executes the given closure for each class of the given name.
      *
@@ -495,24 +1229,127 @@ public class VM implements Closeable {
      * It'll be invoked immediately for all the loaded class (of the given name),
      * and then whenever a new class of the given name is loaded, the closure will be re-invoked.
      *
+     * <p>
+     * All the calls for the same class name share one class prepare request in the target JVM,
+     * so setting many breakpoints on the same class doesn't multiply the cost of loading it.
+     * Filters added to the returned request only narrow down the classes that this closure sees from then on.
+     *
      * @return
      *      A {@link EventRequest} that can be used to cancel future invcocations.
      */
     public ClassPrepareRequest forEachClass(String className, Closure body) {
-        // for classes that are already loaded
-        for (ReferenceType r : vm.classesByName(className))
-            body.call(r);
-        // for classes to be loaded in the future
-        return classPrepare(className,body);
+        return classPrepares.listen(className,body);
+    }
+
+    /**
+     * Starts measuring the line coverage of the classes that match the given patterns,
+     * which are class names optionally starting or ending with '*', like "org.acme.*".
+     *
+     * <p>
+     * Every line of the matching classes, already loaded or loaded later, gets a breakpoint that fires
+     * at most once and doesn't suspend the target JVM, so this costs little once the common code paths have run.
+     *
+     * <pre>
+     * def cov = vm.coverage("org.acme.*")
+     * Thread.start {
+     *   sleep 600000
+     *   cov.stop()
+     *   cov.write(new File("coverage.txt"))
+     * }
+     * </pre>
+     */
+    public Coverage coverage(String[] patterns) {
+        Coverage cov = new Coverage();
+        Closure handler = { BreakpointEvent e ->
+            cov.hit(e.request(),e.location());
+            try {
+                req.deleteEventRequest(e.request());
+            } catch (VMDisconnectedException x) {
+                // the target JVM has run ahead and exited, but the hits still in the queue count
+            }
+        };
+        for (String p : patterns) {
+            cov.addClassPrepare(forEachClass(p) { ReferenceType t ->
+                for (Location loc : cov.add(t)) {
+                    // no registerHandler, as per-request statistics for tens of thousands of these aren't worth it
+                    BreakpointRequest bp = req.createBreakpointRequest(loc);
+                    bp.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+                    bp.addCountFilter(1);
+                    HANDLER[bp] = handler;
+                    cov.addBreakpoint(bp);
+                    bp.enable();
+                }
+            });
+        }
+        return cov;
+    }
+
+    /**
+     * Creates the class prepare request that all the {@link #forEachClass(String, Closure)} calls
+     * for the given class name share.
+     */
+    /*package*/ ClassPrepareRequest createSharedClassPrepareRequest(String className) {
+        ClassPrepareRequest r = req.createClassPrepareRequest();
+        r.addClassFilter(className);
+        registerHandler(r) { ClassPrepareEvent event ->
+            for (def l : classPrepares.onClassPrepare(className,event)) {
+                // the shared request may suspend less than this listener asks for
+                boolean suspend = l.suspendPolicy()==EventRequest.SUSPEND_ALL && event.request().suspendPolicy()!=EventRequest.SUSPEND_ALL;
+                if (suspend)    vm.suspend();
+                try {
+                    bind(l.body,event.thread()).call(event.referenceType());
+                } finally {
+                    if (suspend)    vm.resume();
+                }
+            }
+        };
+        r.enable();
+        return r;
     }
 
     /**
      * Shuts down the connection.
      */
     public void close() {
+        statistics.close();
+        recorder?.close();
         vm.dispose();
     }
 
+    /**
+     * Starts recording to the given file. See {@link #record(Map)}.
+     * The recording ends when the script finishes or {@link #close()} is called.
+     */
+    public void recordTo(File f) throws IOException {
+        recorder?.close();
+        recorder = new Recorder(f);
+    }
+
+    /**
+     * Appends the given values, along with the time, the request, the thread, and the location of the current event,
+     * to the file specified by {@link #recordTo(File)}.
+     *
+     * <p>
+     * This is much cheaper than printing the values, and the file can be converted to CSV or JSON,
+     * or summarized, afterward with the -read option.
+     *
+     * <pre>
+     * vm.recordTo(new File("foo.ydr"));
+     * vm.breakpoint("org.acme.Foo",42) {
+     *   vm.record(id:id, size:list.size())
+     * }
+     * </pre>
+     */
+    public void record(Map values) {
+        Recorder r = recorder;
+        if (r==null)    throw new IllegalStateException("recordTo() needs to be called first");
+        r.record(currentEvent.get(),values);
+    }
+
+    /*package*/ StringPool getStringPool() {
+        return strings;
+    }
+
     private VM _this() {
         return this;
     }
@@ -569,6 +1406,10 @@ public class VM implements Closeable {
         // or else when we do this later, the VM runs a bit, and we can miss events
         vm.version();
 
+        // the script can run in parallel with scripts for other JVMs, so make sure it sees the right one
+        final VM old = CURRENT.get();
+        CURRENT.set(this);
+
         // make JDICategory available by default
         use(JDICategory) {
             CompilerConfiguration cc = new CompilerConfiguration();
@@ -578,10 +1419,23 @@ public class VM implements Closeable {
             binding.setVariable("vm",_this());
             variables?.each { k,v -> binding.setVariable(k,v) }
 
-            GroovyShell groovy = new GroovyShell(binding,cc);
-
-            groovy.parse(script).run();
-            dispatchEvents();
+            try {
+                Script s;
+                if (scriptCache!=null) {
+                    Class<? extends Script> c = scriptCache.load(script,cc);
+                    s = InvokerHelper.createScript(c,binding);
+                    startupTimes?.mark(ScriptCache.isCached(c) ? StartupTimes.COMPILE_CACHED : StartupTimes.COMPILE);
+                } else {
+                    s = new GroovyShell(binding,cc).parse(script);
+                    startupTimes?.mark(StartupTimes.COMPILE);
+                }
+                s.run();
+                startupTimes?.report();
+                dispatchEvents();
+            } finally {
+                recorder?.close();
+                CURRENT.set(old);
+            }
         }
     }
 
@@ -601,12 +1455,29 @@ public class VM implements Closeable {
 
     /**
      * Dumps information about all the threads in the target JVM to the specified object.
+     *
+     * <p>
+     * The target JVM is suspended while the stacks are captured, so that the dump is consistent,
+     * and it's resumed before the dump is written out.
      */
     public void dumpAllThreads(PrintWriter out) throws IncompatibleThreadStateException {
-        for (ThreadReference r : vm.allThreads()) {
-            JDICategory.dumpThread(r,out);
+        try {
+            threadDumper.dumpAll(vm,out);
+        } finally {
+            ValueCache.invalidate();    // resuming invalidates stack frames, even if threads stay suspended
         }
+    }
 
+    /**
+     * Dumps information about all the threads in the target JVM to the specified file.
+     */
+    public void dumpAllThreads(File f) throws IOException {
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+        try {
+            dumpAllThreads(w);
+        } finally {
+            w.close();
+        }
     }
 
     public void suspend() {
@@ -615,6 +1486,7 @@ public class VM implements Closeable {
 
     public void resume() {
         vm.resume();
+        ValueCache.invalidate();
     }
 
     /**
@@ -626,6 +1498,22 @@ public class VM implements Closeable {
             c.call();
         } finally {
             vm.resume();
+            ValueCache.invalidate();
+        }
+    }
+
+    /**
+     * Replaces the definitions of classes in the target JVM.
+     *
+     * Use this instead of {@link VirtualMachine#redefineClasses(Map)} so that the information
+     * cached about the redefined classes gets discarded.
+     */
+    public void redefineClasses(Map classToBytes) {
+        try {
+            vm.redefineClasses(classToBytes);
+        } finally {
+            typeCache.clear();
+            threadDumper.clear();
         }
     }
 
@@ -641,6 +1529,63 @@ public class VM implements Closeable {
         bean.dumpHeap(path,true);
     }
 
+    /**
+     * Counts the live instances of each loaded class in the target JVM, without a heap dump.
+     *
+     * <pre>
+     * def before = vm.histogram("org.acme.*")
+     * ...
+     * println vm.histogram("org.acme.*").diff(before)
+     * </pre>
+     *
+     * @param patterns
+     *      Class names, optionally starting or ending with '*', to limit the classes to count.
+     *      All the classes are counted if none is given.
+     */
+    public Histogram histogram(String[] patterns) {
+        return Histogram.take(vm,patterns);
+    }
+
+    /**
+     * Takes the given number of {@linkplain #histogram(String[]) histograms} at the given interval,
+     * and returns how much the classes that grew every time have grown, which points to leaks.
+     * This blocks until all the histograms are taken, so call it where the target JVM isn't suspended.
+     */
+    public Histogram growingClasses(int count, long intervalMillis, String[] patterns) {
+        List<Histogram> histograms = [];
+        for (int i=0; i<count; i++) {
+            if (i>0)    Thread.sleep(intervalMillis);
+            histograms.add(histogram(patterns));
+        }
+        return Histogram.growing(histograms);
+    }
+
+    /**
+     * Invokes the closure for up to the given number of live instances of the given class, each with
+     * the chain of references that keeps it alive, so that the cause of a leak can be found without a heap dump.
+     *
+     * <pre>
+     * vm.sampleInstances("org.acme.Session",5,20) { o, chain -> println chain.join(" -> ") }
+     * </pre>
+     *
+     * The chain lists where each reference is held, from a static field or the farthest referrer found
+     * within the depth down to the one that holds the instance directly.
+     * The closure can return false to stop the sampling early.
+     */
+    public void sampleInstances(String className, int max, int depth, Closure body) {
+        if (!vm.canGetInstanceInfo())
+            throw new UnsupportedOperationException("The target JVM can't list instances");
+        int n=0;
+        for (ReferenceType t : vm.classesByName(className)) {
+            if (n>=max) return; // instances(0) would list all of them
+            for (ObjectReference o : t.instances(max-n)) {
+                n++;
+                if (body.call(o,ReferrerChain.of(o,depth))==false)
+                    return;
+            }
+        }
+    }
+
     /**
      * Can be called during event dispatching to obtain the current {@link VM} instance.
      */
@@ -650,10 +1595,22 @@ public class VM implements Closeable {
 
     private static final Logger LOGGER = Logger.getLogger(VM.class.getName());
 
+    /**
+     * Number of strings kept in the target JVM for reuse.
+     */
+    private static final int STRING_POOL_SIZE = 256;
+
     /*package*/ static final Key<Closure> HANDLER = new Key<Closure>(Closure.class);
+    /*package*/ static final Key<RequestStatistics> STATS = new Key<RequestStatistics>(RequestStatistics.class);
+    /*package*/ static final Key<Throttle> THROTTLE = Throttle.KEY;
 
     public static final ExceptionBreakpointModifier CAUGHT = ExceptionBreakpointModifier.CAUGHT;
     public static final ExceptionBreakpointModifier UNCAUGHT = ExceptionBreakpointModifier.UNCAUGHT;
 
     private static final ThreadLocal<VM> CURRENT = new ThreadLocal<VM>();
+
+    static {
+        // JDI objects get their metaclasses from JDICategory, so this needs to be in place before they go through Groovy
+        JDIMetaClassCreationHandle.install();
+    }
 }
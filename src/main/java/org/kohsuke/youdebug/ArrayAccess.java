@@ -0,0 +1,152 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.ArrayType;
+import com.sun.jdi.BooleanValue;
+import com.sun.jdi.ByteValue;
+import com.sun.jdi.CharValue;
+import com.sun.jdi.DoubleValue;
+import com.sun.jdi.FloatValue;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.LongValue;
+import com.sun.jdi.ShortValue;
+import com.sun.jdi.Value;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads remote arrays in chunks, instead of one JDWP round trip per element.
+ *
+ * @see JDICategory#toArray(ArrayReference)
+ */
+final class ArrayAccess {
+    private ArrayAccess() {}
+
+    /**
+     * Receives the elements of an array as they're read.
+     */
+    interface Visitor {
+        /**
+         * @param index
+         *      Index of the element, relative to the start of the range being read.
+         * @return
+         *      false to stop reading.
+         */
+        boolean visit(int index, Value v);
+    }
+
+    /**
+     * Reads the given range of the array a chunk at a time, and passes each element to the visitor.
+     */
+    static void forEach(ArrayReference a, int from, int length, Visitor visitor) {
+        checkRange(a,from,length);
+        for (int i=0; i<length; i+=CHUNK) {
+            List<Value> values = chunk(a,from+i,from+length);
+            for (int j=0; j<values.size(); j++)
+                if (!visitor.visit(i+j,values.get(j)))
+                    return;
+        }
+    }
+
+    /**
+     * Reads the chunk that starts at the given index, and doesn't go past the given end.
+     */
+    private static List<Value> chunk(ArrayReference a, int index, int end) {
+        return a.getValues(index,Math.min(CHUNK,end-index));
+    }
+
+    /**
+     * Copies the given range of the array into a local array. Primitive arrays become arrays of the same
+     * primitive type, such as {@code byte[]}, and other arrays become {@code Object[]} of
+     * {@linkplain Variable#unwrap(Value, boolean) unwrapped} elements.
+     */
+    static Object toLocal(ArrayReference a, int from, int length) {
+        final char type = ((ArrayType)a.referenceType()).componentSignature().charAt(0);
+        final Object r;
+        switch (type) {
+        case 'Z':   r = new boolean[length];  break;
+        case 'B':   r = new byte[length];     break;
+        case 'C':   r = new char[length];     break;
+        case 'S':   r = new short[length];    break;
+        case 'I':   r = new int[length];      break;
+        case 'J':   r = new long[length];     break;
+        case 'F':   r = new float[length];    break;
+        case 'D':   r = new double[length];   break;
+        default:    r = new Object[length];
+        }
+        forEach(a,from,length,new Visitor() {
+            public boolean visit(int i, Value v) {
+                switch (type) {
+                case 'Z':   ((boolean[])r)[i] = ((BooleanValue)v).value();  break;
+                case 'B':   ((byte[])r)[i] = ((ByteValue)v).value();        break;
+                case 'C':   ((char[])r)[i] = ((CharValue)v).value();        break;
+                case 'S':   ((short[])r)[i] = ((ShortValue)v).value();      break;
+                case 'I':   ((int[])r)[i] = ((IntegerValue)v).value();      break;
+                case 'J':   ((long[])r)[i] = ((LongValue)v).value();        break;
+                case 'F':   ((float[])r)[i] = ((FloatValue)v).value();      break;
+                case 'D':   ((double[])r)[i] = ((DoubleValue)v).value();    break;
+                default:    ((Object[])r)[i] = Variable.unwrap(v,true);
+                }
+                return true;
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Reads the given range of the array as a list of {@linkplain Variable#unwrap(Value) unwrapped} elements.
+     */
+    static List<Object> range(ArrayReference a, int from, int length) {
+        final List<Object> r = new ArrayList<Object>(length);
+        forEach(a,from,length,new Visitor() {
+            public boolean visit(int i, Value v) {
+                r.add(Variable.unwrap(v));
+                return true;
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Iterates the {@linkplain Variable#unwrap(Value) unwrapped} elements of the array, reading a chunk at a time.
+     * The length of the array is fixed when the iteration starts.
+     */
+    static Iterator<Object> iterator(final ArrayReference a) {
+        final int length = a.length();
+        return new Iterator<Object>() {
+            private int index;
+            private List<Value> chunk;
+            private int chunkStart;
+
+            public boolean hasNext() {
+                return index<length;
+            }
+
+            public Object next() {
+                if (index>=length)  throw new NoSuchElementException();
+                if (chunk==null || index-chunkStart>=chunk.size()) {
+                    chunkStart = index;
+                    chunk = chunk(a,index,length);
+                }
+                return Variable.unwrap(chunk.get(index++ -chunkStart));
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static void checkRange(ArrayReference a, int from, int length) {
+        if (from<0 || length<0 || from+length>a.length())
+            throw new IndexOutOfBoundsException("Range "+from+"+"+length+" is out of the array of length "+a.length());
+    }
+
+    /**
+     * Number of elements read in one round trip.
+     */
+    private static final int CHUNK = 1024;
+}
@@ -0,0 +1,112 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Method;
+
+import java.util.Arrays;
+
+/**
+ * Finds out whether a bytecode index is the target of a jump, by decoding the instructions of a method.
+ *
+ * <p>
+ * A breakpoint at such an index hits not only when the execution gets there the first time, but every time
+ * it jumps back there, as in a method whose body starts with a loop.
+ */
+final class BranchTargets {
+    private BranchTargets() {}
+
+    /**
+     * Checks if any instruction of the method may jump to the given bytecode index.
+     *
+     * @return
+     *      true if the target JVM doesn't provide the bytecode, to be on the safe side.
+     */
+    static boolean isBranchTarget(Method m, int bci) {
+        if (!m.virtualMachine().canGetBytecodes())
+            return true;
+        return isBranchTarget(m.bytecodes(),bci);
+    }
+
+    /*package*/ static boolean isBranchTarget(byte[] code, int target) {
+        int i=0;
+        while (i<code.length) {
+            int op = code[i]&0xFF;
+            switch (op) {
+            case 0xA7: // goto
+            case 0xA8: // jsr
+            case 0xC6: // ifnull
+            case 0xC7: // ifnonnull
+                if (i+s2(code,i+1)==target)    return true;
+                i+=3;
+                break;
+            case 0xC8: // goto_w
+            case 0xC9: // jsr_w
+                if (i+s4(code,i+1)==target)    return true;
+                i+=5;
+                break;
+            case 0xAA: { // tableswitch
+                int p = (i+4)&~3;
+                if (i+s4(code,p)==target)   return true;
+                int low = s4(code,p+4), high = s4(code,p+8);
+                for (int j=0; j<=high-low; j++)
+                    if (i+s4(code,p+12+j*4)==target)   return true;
+                i = p+12+(high-low+1)*4;
+                break;
+            }
+            case 0xAB: { // lookupswitch
+                int p = (i+4)&~3;
+                if (i+s4(code,p)==target)   return true;
+                int n = s4(code,p+4);
+                for (int j=0; j<n; j++)
+                    if (i+s4(code,p+12+j*8)==target)   return true;
+                i = p+8+n*8;
+                break;
+            }
+            case 0xC4: // wide
+                i += (code[i+1]&0xFF)==0x84 ? 6 : 4;
+                break;
+            default:
+                if (op>=0x99 && op<=0xA6) { // if<cond>, if_icmp<cond>, if_acmp<cond>
+                    if (i+s2(code,i+1)==target)    return true;
+                }
+                i += LENGTHS[op];
+            }
+        }
+        return false;
+    }
+
+    private static int s2(byte[] code, int i) {
+        return (short)(((code[i]&0xFF)<<8) | (code[i+1]&0xFF));
+    }
+
+    private static int s4(byte[] code, int i) {
+        return ((code[i]&0xFF)<<24) | ((code[i+1]&0xFF)<<16) | ((code[i+2]&0xFF)<<8) | (code[i+3]&0xFF);
+    }
+
+    /**
+     * Length of each instruction with a fixed length, including the opcode.
+     */
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        Arrays.fill(LENGTHS,1);
+        LENGTHS[0x10] = 2;  // bipush
+        LENGTHS[0x11] = 3;  // sipush
+        LENGTHS[0x12] = 2;  // ldc
+        LENGTHS[0x13] = 3;  // ldc_w
+        LENGTHS[0x14] = 3;  // ldc2_w
+        for (int op=0x15; op<=0x19; op++)   LENGTHS[op] = 2;    // iload..aload
+        for (int op=0x36; op<=0x3A; op++)   LENGTHS[op] = 2;    // istore..astore
+        LENGTHS[0x84] = 3;  // iinc
+        for (int op=0x99; op<=0xA8; op++)   LENGTHS[op] = 3;    // if<cond>..jsr
+        LENGTHS[0xA9] = 2;  // ret
+        for (int op=0xB2; op<=0xB8; op++)   LENGTHS[op] = 3;    // getstatic..invokestatic
+        LENGTHS[0xB9] = 5;  // invokeinterface
+        LENGTHS[0xBA] = 5;  // invokedynamic
+        LENGTHS[0xBB] = 3;  // new
+        LENGTHS[0xBC] = 2;  // newarray
+        LENGTHS[0xBD] = 3;  // anewarray
+        LENGTHS[0xC0] = 3;  // checkcast
+        LENGTHS[0xC1] = 3;  // instanceof
+        LENGTHS[0xC5] = 4;  // multianewarray
+    }
+}
@@ -23,8 +23,11 @@ public class BundledEventRequest<E extends EventRequest> implements SyntheticEve
     }
 
     public void setEnabled(boolean val) {
-        for (E r : requests)
+        for (E r : requests) {
+            Throttle th = Throttle.KEY.get(r);
+            if (th!=null)   th.onSetEnabled(r);   // so that the end of a cooldown doesn't undo this
             r.setEnabled(val);
+        }
     }
 
     public void enable() {
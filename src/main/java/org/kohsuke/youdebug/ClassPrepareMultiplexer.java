@@ -0,0 +1,294 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.event.ClassPrepareEvent;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
+import groovy.lang.Closure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shares one {@link ClassPrepareRequest} among all the {@link VM#forEachClass(String, Closure)} calls
+ * for the same class name.
+ *
+ * <p>
+ * Without this, a hundred breakpoints on the same class would mean a hundred class prepare requests,
+ * and every time a class of that name is loaded, the target JVM would be suspended and resumed a hundred times.
+ * This also keeps the classes of each name seen so far, so that only the first call for a name
+ * needs to ask the target JVM for the classes that are already loaded.
+ *
+ * <p>
+ * Each call gets a {@link Listener}, which works as its own class prepare request. The underlying request
+ * is deleted when all of its listeners are. Filters added to a listener are checked here, and only apply
+ * to the classes loaded after they are added, as the closure has already seen those loaded before.
+ */
+final class ClassPrepareMultiplexer {
+    private final VM vm;
+    private final Map<String,Entry> entries = new HashMap<String,Entry>();
+
+    ClassPrepareMultiplexer(VM vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * Invokes the closure for each class of the given name that's already loaded,
+     * and then whenever a new class of the given name is loaded.
+     */
+    ClassPrepareRequest listen(String className, Closure body) {
+        Listener l;
+        List<ReferenceType> loaded;
+        synchronized (this) {
+            Entry e = entries.get(className);
+            if (e==null) {
+                // create the request before listing the classes, so that we won't miss any
+                e = new Entry(className,vm.createSharedClassPrepareRequest(className));
+                entries.put(className,e);
+            }
+            l = new Listener(e,body);
+            e.listeners.add(l);
+            loaded = new ArrayList<ReferenceType>(e.getClasses());
+        }
+        for (ReferenceType t : loaded)
+            body.call(t);
+        return l;
+    }
+
+    /**
+     * Called when a class of the given name is loaded, to determine the listeners to notify.
+     */
+    synchronized List<Listener> onClassPrepare(String className, ClassPrepareEvent event) {
+        List<Listener> r = new ArrayList<Listener>();
+        Entry e = entries.get(className);
+        if (e==null)    return r;   // all listeners deleted while the event was in the queue
+
+        ReferenceType t = event.referenceType();
+        if (e.classes!=null) {
+            if (e.classes.contains(t))
+                return r;   // loaded while we were listing the classes, and the listeners have already seen it
+            e.classes.add(t);
+        }
+        for (Listener l : e.listeners)
+            if (l.accept(t))
+                r.add(l);
+        return r;
+    }
+
+    /**
+     * Called when a class is unloaded, to forget it.
+     */
+    synchronized void onClassUnload(String className) {
+        for (Entry e : entries.values()) {
+            if (e.classes==null || !matches(e.className,className))   continue;
+            if (e.className.equals(className)) {
+                e.classes = null;   // ask the target JVM again what's still there
+            } else {
+                for (Iterator<ReferenceType> itr = e.classes.iterator(); itr.hasNext(); )
+                    if (itr.next().name().equals(className))
+                        itr.remove();
+            }
+        }
+    }
+
+    private synchronized void remove(Listener l) {
+        Entry e = l.entry;
+        if (e.listeners.remove(l) && e.listeners.isEmpty()) {
+            entries.remove(e.className);
+            JDICategory.delete(e.request);
+        }
+    }
+
+    /**
+     * Checks if the class name matches the restricted regular expression that {@link ClassPrepareRequest#addClassFilter(String)} takes.
+     */
+    /*package*/ static boolean matches(String pattern, String className) {
+        if (pattern.startsWith("*"))    return className.endsWith(pattern.substring(1));
+        if (pattern.endsWith("*"))      return className.startsWith(pattern.substring(0,pattern.length()-1));
+        return pattern.equals(className);
+    }
+
+    /**
+     * One shared request, and the classes it has seen.
+     */
+    private final class Entry {
+        final String className;
+        final ClassPrepareRequest request;
+        final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+        /**
+         * Classes of this name known to be loaded, or null if we need to ask the target JVM.
+         */
+        List<ReferenceType> classes;
+
+        Entry(String className, ClassPrepareRequest request) {
+            this.className = className;
+            this.request = request;
+        }
+
+        List<ReferenceType> getClasses() {
+            if (classes==null) {
+                VirtualMachine jvm = vm.getVirtualMachine();
+                if (className.indexOf('*')<0) {
+                    classes = new ArrayList<ReferenceType>(jvm.classesByName(className));
+                } else {
+                    // classesByName doesn't take patterns
+                    classes = new ArrayList<ReferenceType>();
+                    for (ReferenceType t : jvm.allClasses())
+                        if (t.isPrepared() && matches(className,t.name()))
+                            classes.add(t);
+                }
+            }
+            return classes;
+        }
+    }
+
+    /**
+     * The part of the shared request that belongs to one {@link VM#forEachClass(String, Closure)} call.
+     */
+    final class Listener implements ClassPrepareRequest, SyntheticEventRequest {
+        private final Entry entry;
+        private final Closure body;
+        private volatile boolean enabled = true;
+        private final Map<Object,Object> properties = new HashMap<Object,Object>();
+
+        private final List<ReferenceType> typeFilters = new ArrayList<ReferenceType>();
+        private final List<String> classFilters = new ArrayList<String>();
+        private final List<String> classExclusionFilters = new ArrayList<String>();
+        private final List<String> sourceNameFilters = new ArrayList<String>();
+        /**
+         * Number of matching classes still to be skipped before the next one is reported, or 0 for no count filter.
+         */
+        private int count;
+        private volatile int suspendPolicy;
+
+        Listener(Entry entry, Closure body) {
+            this.entry = entry;
+            this.body = body;
+            this.suspendPolicy = entry.request.suspendPolicy();
+        }
+
+        Closure getBody() {
+            return body;
+        }
+
+        /**
+         * Checks the filters of this listener against a newly loaded class.
+         * Like the count filter of JDI, this disables the listener once the count is reached.
+         */
+        private synchronized boolean accept(ReferenceType t) {
+            if (!enabled)   return false;
+            for (ReferenceType f : typeFilters)
+                if (!isSubtype(t,f))
+                    return false;
+            for (String p : classFilters)
+                if (!matches(p,t.name()))
+                    return false;
+            for (String p : classExclusionFilters)
+                if (matches(p,t.name()))
+                    return false;
+            if (!sourceNameFilters.isEmpty()) {
+                String src;
+                try {
+                    src = t.sourceName();
+                } catch (AbsentInformationException e) {
+                    return false;   // as with JDI, classes without a source name don't match
+                }
+                for (String p : sourceNameFilters)
+                    if (!matches(p,src))
+                        return false;
+            }
+            if (count>0) {
+                if (--count>0)  return false;
+                enabled = false;
+            }
+            return true;
+        }
+
+        private boolean isSubtype(ReferenceType t, ReferenceType of) {
+            try {
+                return JDICategory.isAssignableFrom(of,t);
+            } catch (ClassNotLoadedException e) {
+                return false;
+            }
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public synchronized void setEnabled(boolean val) {
+            enabled = val;
+        }
+
+        public void enable() {
+            setEnabled(true);
+        }
+
+        public void disable() {
+            setEnabled(false);
+        }
+
+        public void delete() {
+            remove(this);
+        }
+
+        public synchronized void addClassFilter(ReferenceType refType) {
+            typeFilters.add(refType);
+        }
+
+        public synchronized void addClassFilter(String classPattern) {
+            classFilters.add(classPattern);
+        }
+
+        public synchronized void addClassExclusionFilter(String classPattern) {
+            classExclusionFilters.add(classPattern);
+        }
+
+        public synchronized void addSourceNameFilter(String sourceNamePattern) {
+            sourceNameFilters.add(sourceNamePattern);
+        }
+
+        public synchronized void addCountFilter(int count) {
+            if (count<=0)   throw new IllegalArgumentException("count must be positive: "+count);
+            this.count = count;
+        }
+
+        /**
+         * The suspend policy of the shared request can't change per listener. Instead, {@link EventRequest#SUSPEND_ALL}
+         * is honored by suspending the whole target JVM while the closure of this listener runs,
+         * and a weaker policy than that of the shared request has no effect.
+         */
+        public void setSuspendPolicy(int policy) {
+            suspendPolicy = policy;
+        }
+
+        public int suspendPolicy() {
+            return suspendPolicy;
+        }
+
+        public synchronized void putProperty(Object key, Object value) {
+            if (value==null)    properties.remove(key);
+            else                properties.put(key,value);
+        }
+
+        public synchronized Object getProperty(Object key) {
+            return properties.get(key);
+        }
+
+        public VirtualMachine virtualMachine() {
+            return entry.request.virtualMachine();
+        }
+
+        @Override
+        public String toString() {
+            return "class prepare "+entry.className;
+        }
+    }
+}
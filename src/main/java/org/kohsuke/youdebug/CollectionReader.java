@@ -0,0 +1,172 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.Field;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the common JDK collections in the target JVM from their fields, instead of through
+ * {@code iterator()}, {@code hasNext()} and {@code next()}, each of which would be a method invocation
+ * that resumes the target JVM.
+ *
+ * <p>
+ * This knows the layouts of {@code ArrayList}, {@code HashMap}, {@code LinkedHashMap} and {@code ConcurrentHashMap}
+ * of both Java 7 and 8. For other classes, and for layouts it doesn't recognize, it returns null, so that the caller
+ * can fall back to the method invocation. Elements are {@linkplain Variable#unwrap(Value) unwrapped}.
+ *
+ * @see JDICategory#readList(ObjectReference, java.util.Map)
+ * @see JDICategory#readMap(ObjectReference, java.util.Map)
+ */
+final class CollectionReader {
+    private final int max;
+    /**
+     * Fields of the entry types, so that they're looked up once per type and not for every entry.
+     */
+    private final Map<ReferenceType,Field[]> entryFields = new HashMap<ReferenceType,Field[]>();
+
+    /**
+     * @param max
+     *      Maximum number of elements or entries to read. The rest is left out.
+     */
+    CollectionReader(int max) {
+        this.max = max;
+    }
+
+    /**
+     * Reads the elements of an {@code ArrayList}.
+     *
+     * @return
+     *      null if the object isn't an {@code ArrayList} this knows how to read.
+     */
+    List<Object> readList(ObjectReference o) {
+        ReferenceType t = o.referenceType();
+        if (!t.name().equals("java.util.ArrayList"))    return null;
+        Field elementData = t.fieldByName("elementData");
+        Field size = t.fieldByName("size");
+        if (elementData==null || size==null)   return null;
+
+        Map<Field,Value> values = o.getValues(Arrays.asList(elementData,size));
+        ArrayReference a = (ArrayReference)values.get(elementData);
+        int n = Math.min(Math.min(((IntegerValue)values.get(size)).value(),max), a==null ? 0 : a.length());
+        return n==0 ? new ArrayList<Object>() : ArrayAccess.range(a,0,n);
+    }
+
+    /**
+     * Reads the entries of a {@code HashMap}, {@code LinkedHashMap} or {@code ConcurrentHashMap}.
+     *
+     * @return
+     *      null if the object isn't a map this knows how to read.
+     */
+    Map<Object,Object> readMap(ObjectReference o) {
+        ReferenceType t = o.referenceType();
+        String name = t.name();
+        Map<Object,Object> r = new LinkedHashMap<Object,Object>();
+        if (name.equals("java.util.LinkedHashMap")) {
+            Field head = t.fieldByName("head");     // Java 8
+            if (head!=null)
+                return readLinked((ObjectReference)o.getValue(head),null,r);
+            Field header = t.fieldByName("header"); // Java 7, which has a sentinel at both ends
+            if (header!=null) {
+                ObjectReference h = (ObjectReference)o.getValue(header);
+                if (h==null)    return null;
+                Field after = h.referenceType().fieldByName("after");
+                if (after==null)    return null;
+                return readLinked((ObjectReference)h.getValue(after),h,r);
+            }
+            return null;
+        }
+        if (name.equals("java.util.HashMap") || name.equals("java.util.concurrent.ConcurrentHashMap")) {
+            Field table = t.fieldByName("table");   // Java 7 ConcurrentHashMap has segments instead
+            if (table==null)    return null;
+            ArrayReference a = (ArrayReference)o.getValue(table);
+            if (a==null)    return r;   // nothing put yet
+            return readTable(a,r) ? r : null;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the buckets of a hash table, each of which is a chain of entries linked by 'next'.
+     *
+     * @return
+     *      false if the table has an entry this doesn't know how to read.
+     */
+    private boolean readTable(ArrayReference table, Map<Object,Object> r) {
+        // entries aren't strings, so unwrapping leaves them as they are
+        for (Iterator<Object> itr = ArrayAccess.iterator(table); itr.hasNext() && r.size()<max; ) {
+            ObjectReference e = (ObjectReference)itr.next();
+            if (e!=null) {
+                String n = e.referenceType().name();
+                if (n.endsWith("$ForwardingNode"))
+                    return false;   // ConcurrentHashMap being resized, and some entries are only in the new table
+                if (n.endsWith("$ReservationNode"))
+                    continue;       // placeholder while computeIfAbsent runs
+                if (n.endsWith("$TreeBin")) {
+                    // ConcurrentHashMap keeps the entries of a large bucket in a tree, but they're still chained from 'first'
+                    Field first = e.referenceType().fieldByName("first");
+                    if (first==null)    return false;
+                    e = (ObjectReference)e.getValue(first);
+                }
+            }
+            while (e!=null && r.size()<max) {
+                Field[] fs = fieldsOf(e.referenceType());
+                if (fs==null)   return false;
+                Map<Field,Value> values = e.getValues(Arrays.asList(fs));
+                r.put(Variable.unwrap(values.get(fs[0])),Variable.unwrap(values.get(fs[1])));
+                e = (ObjectReference)values.get(fs[2]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Follows the entries in the insertion order, from the given one.
+     *
+     * @param end
+     *      The entry at which the list ends, in addition to null.
+     */
+    private Map<Object,Object> readLinked(ObjectReference e, ObjectReference end, Map<Object,Object> r) {
+        while (e!=null && !e.equals(end) && r.size()<max) {
+            Field[] fs = fieldsOf(e.referenceType());
+            Field after = e.referenceType().fieldByName("after");
+            if (fs==null || after==null)    return null;
+            Map<Field,Value> values = e.getValues(Arrays.asList(fs[0],fs[1],after));
+            r.put(Variable.unwrap(values.get(fs[0])),Variable.unwrap(values.get(fs[1])));
+            e = (ObjectReference)values.get(after);
+        }
+        return r;
+    }
+
+    /**
+     * Finds the key, value and next fields of an entry type.
+     *
+     * @return
+     *      null if the type doesn't have them.
+     */
+    private Field[] fieldsOf(ReferenceType t) {
+        if (entryFields.containsKey(t))
+            return entryFields.get(t);
+
+        Field value = t.fieldByName("value");
+        if (value==null)    value = t.fieldByName("val");     // ConcurrentHashMap
+        Field[] r = { t.fieldByName("key"), value, t.fieldByName("next") };
+        for (Field f : r)
+            if (f==null) {
+                r = null;
+                break;
+            }
+        entryFields.put(t,r);
+        return r;
+    }
+}
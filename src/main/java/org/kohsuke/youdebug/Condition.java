@@ -0,0 +1,82 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import groovy.lang.Closure;
+import groovy.lang.GroovyObjectSupport;
+import groovy.lang.MissingPropertyException;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Condition of a breakpoint, evaluated before the breakpoint closure to decide whether to run it.
+ *
+ * <p>
+ * The condition is a closure that reads variables just like the breakpoint closure does. The names of
+ * the variables it reads are remembered, and from the next hit on, they are all fetched upfront in
+ * as few round trips as possible (see {@link JDICategory#variables(StackFrame, String[])}),
+ * instead of one round trip per variable. A condition that reads something new, for example because
+ * it's short-circuited differently this time, still works, and the new name is fetched upfront from then on.
+ */
+final class Condition {
+    private final Closure condition;
+    /**
+     * Names of the variables that the condition has been seen reading.
+     */
+    private final Set<String> names = new CopyOnWriteArraySet<String>();
+
+    Condition(Closure condition) {
+        this.condition = condition;
+    }
+
+    /**
+     * Evaluates the condition in the context of the top stack frame of the given suspended thread.
+     */
+    boolean test(ThreadReference thread) throws IncompatibleThreadStateException {
+        Map<String,Object> values = Collections.emptyMap();
+        if (!names.isEmpty()) {
+            try {
+                values = JDICategory.variables(ValueCache.topFrame(thread), names.toArray(new String[names.size()]));
+            } catch (MissingPropertyException e) {
+                // the same breakpoint in a different class, where not all the names resolve. read them one by one
+            }
+        }
+
+        Closure c = (Closure)condition.clone();
+        c.setDelegate(new Delegate(new EventDelegate(thread),values));
+        c.setResolveStrategy(Closure.DELEGATE_FIRST);
+        return DefaultTypeTransformation.castToBoolean(c.call());
+    }
+
+    /**
+     * Serves the values fetched upfront, and records the names of the other variables read.
+     */
+    private final class Delegate extends GroovyObjectSupport {
+        private final EventDelegate event;
+        private final Map<String,Object> values;
+
+        Delegate(EventDelegate event, Map<String,Object> values) {
+            this.event = event;
+            this.values = values;
+        }
+
+        public Object getProperty(String property) {
+            if (values.containsKey(property))
+                return values.get(property);
+
+            Object v = event.getProperty(property);
+            if (!property.equals("thread") && !property.equals("self") && !Character.isDigit(property.charAt(0)))
+                names.add(property);
+            return v;
+        }
+
+        public void setProperty(String property, Object newValue) {
+            throw new UnsupportedOperationException("Conditions can't modify "+property);
+        }
+    }
+}
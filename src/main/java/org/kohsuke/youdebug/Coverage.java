@@ -0,0 +1,228 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.EventRequest;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Line coverage of the classes in the target JVM, measured with one-shot breakpoints.
+ *
+ * <p>
+ * Each line gets a breakpoint that doesn't suspend the target JVM and that only fires the first time the line runs,
+ * after which it's deleted. So once the hot code paths are covered, the target JVM runs at full speed again,
+ * which makes this usable against a production JVM.
+ *
+ * @see VM#coverage(String[])
+ */
+public final class Coverage {
+    /**
+     * Class name to line number to whether the line has run.
+     */
+    private final Map<String,SortedMap<Integer,Boolean>> lines = new TreeMap<String,SortedMap<Integer,Boolean>>();
+    /**
+     * Classes whose lines are already registered, so that the line locations of each class are read only once,
+     * even if it matches multiple patterns.
+     */
+    private final Set<ReferenceType> types = new HashSet<ReferenceType>();
+    /**
+     * Breakpoints yet to fire.
+     */
+    private final Set<EventRequest> pending = new HashSet<EventRequest>();
+    /**
+     * Class prepare requests that install breakpoints on newly loaded classes.
+     */
+    private final List<EventRequest> classPrepares = new ArrayList<EventRequest>();
+
+    /*package*/ Coverage() {
+    }
+
+    /**
+     * Registers the lines of the given class, and returns the locations to set breakpoints on,
+     * which are the first location of each line in each method.
+     *
+     * @return
+     *      empty if the class has been seen already or has no line number information.
+     */
+    /*package*/ synchronized List<Location> add(ReferenceType t) {
+        if (!types.add(t))  return Collections.emptyList();
+
+        List<Location> all;
+        try {
+            all = t.allLineLocations();
+        } catch (AbsentInformationException e) {
+            all = Collections.emptyList();  // compiled without debug information
+        }
+
+        List<Location> r = new ArrayList<Location>();
+        Map<Method,Set<Integer>> linesByMethod = new HashMap<Method,Set<Integer>>();
+        for (Location l : all) {
+            if (l.lineNumber()<0)   continue;
+            Set<Integer> s = linesByMethod.get(l.method());
+            if (s==null)    linesByMethod.put(l.method(),s=new HashSet<Integer>());
+            if (!s.add(l.lineNumber()))   continue;   // allLineLocations is in the code index order, so this is the first one
+            r.add(l);
+
+            SortedMap<Integer,Boolean> m = linesOf(l.declaringType().name());
+            if (!m.containsKey(l.lineNumber()))
+                m.put(l.lineNumber(),false);
+        }
+        return r;
+    }
+
+    private SortedMap<Integer,Boolean> linesOf(String className) {
+        SortedMap<Integer,Boolean> m = lines.get(className);
+        if (m==null)    lines.put(className,m=new TreeMap<Integer,Boolean>());
+        return m;
+    }
+
+    /*package*/ synchronized void addBreakpoint(BreakpointRequest q) {
+        pending.add(q);
+    }
+
+    /*package*/ synchronized void addClassPrepare(EventRequest q) {
+        classPrepares.add(q);
+    }
+
+    /**
+     * Called when the line of the given location runs for the first time.
+     */
+    /*package*/ synchronized void hit(EventRequest q, Location l) {
+        pending.remove(q);
+        linesOf(l.declaringType().name()).put(l.lineNumber(),true);
+    }
+
+    /**
+     * Stops measuring, by deleting all the breakpoints yet to fire.
+     */
+    public synchronized void stop() {
+        try {
+            for (EventRequest q : classPrepares)
+                JDICategory.delete(q);
+            for (EventRequest q : pending)
+                JDICategory.delete(q);
+        } catch (VMDisconnectedException e) {
+            // nothing to clean up
+        }
+        classPrepares.clear();
+        pending.clear();
+    }
+
+    /**
+     * Line numbers of the given class, each mapped to whether it has run.
+     *
+     * @return
+     *      empty if the class hasn't been seen.
+     */
+    public synchronized SortedMap<Integer,Boolean> getLines(String className) {
+        SortedMap<Integer,Boolean> m = lines.get(className);
+        return m!=null ? new TreeMap<Integer,Boolean>(m) : new TreeMap<Integer,Boolean>();
+    }
+
+    /**
+     * Total number of lines in all the classes seen.
+     */
+    public synchronized int getLineCount() {
+        int n=0;
+        for (SortedMap<Integer,Boolean> m : lines.values())
+            n += m.size();
+        return n;
+    }
+
+    /**
+     * Number of lines that have run.
+     */
+    public synchronized int getCoveredLineCount() {
+        int n=0;
+        for (SortedMap<Integer,Boolean> m : lines.values())
+            for (Boolean b : m.values())
+                if (b)  n++;
+        return n;
+    }
+
+    /**
+     * Writes the coverage of each class, followed by the lines that haven't run.
+     *
+     * <pre>
+     * org.acme.Foo 30/40 75.0%
+     *   missed: 12-14,20
+     * </pre>
+     */
+    public synchronized void write(PrintWriter w) {
+        for (Entry<String,SortedMap<Integer,Boolean>> e : lines.entrySet()) {
+            int covered=0;
+            StringBuilder missed = new StringBuilder();
+            int start=-1, last=-1;
+            for (Entry<Integer,Boolean> l : e.getValue().entrySet()) {
+                if (l.getValue()) {
+                    covered++;
+                    continue;
+                }
+                int n = l.getKey();
+                if (start>=0 && !hasCoveredLineBetween(e.getValue(),last,n)) {
+                    last = n;   // extends the current range
+                    continue;
+                }
+                appendRange(missed,start,last);
+                start = last = n;
+            }
+            appendRange(missed,start,last);
+
+            w.println(e.getKey()+' '+format(covered,e.getValue().size()));
+            if (missed.length()>0)
+                w.println("  missed: "+missed);
+        }
+        w.println("total "+format(getCoveredLineCount(),getLineCount()));
+        w.flush();
+    }
+
+    /**
+     * Writes the report to the given file.
+     */
+    public void write(File f) throws IOException {
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+        try {
+            write(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Checks if there's a covered line between the two, so that missed lines
+     * separated only by blank lines and comments still form one range.
+     */
+    private static boolean hasCoveredLineBetween(SortedMap<Integer,Boolean> lines, int from, int to) {
+        return lines.subMap(from+1,to).containsValue(true);
+    }
+
+    private static void appendRange(StringBuilder buf, int start, int end) {
+        if (start<0)    return;
+        if (buf.length()>0) buf.append(',');
+        buf.append(start);
+        if (end!=start) buf.append('-').append(end);
+    }
+
+    private static String format(int covered, int total) {
+        return String.format("%d/%d %.1f%%", covered, total, total==0 ? 0.0 : covered*100.0/total);
+    }
+}
@@ -4,6 +4,8 @@ import com.sun.jdi.IncompatibleThreadStateException;
 import com.sun.jdi.ThreadReference;
 import groovy.lang.GroovyObjectSupport;
 
+import java.util.Map;
+
 /**
  * Used as the delegate of the breakpoint callback, instead of passing in {@link ThreadReference} directly.
  *
@@ -33,12 +35,25 @@ final class EventDelegate extends GroovyObjectSupport {
         return getProperty("this");
     }
 
+    /**
+     * Reads multiple variables visible from the current stack frame at once.
+     *
+     * @see JDICategory#variables(com.sun.jdi.StackFrame, String[])
+     */
+    public Map<String,Object> variables(String... names) {
+        try {
+            return JDICategory.variables(ValueCache.topFrame(thread),names);
+        } catch (IncompatibleThreadStateException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public Object getProperty(String property) {
         try {
             if (property.equals("thread"))   return thread;
             if (property.equals("self"))     return getSelf();
 
-            return JDICategory.propertyMissing(thread.frame(0),property);
+            return JDICategory.propertyMissing(ValueCache.topFrame(thread),property);
         } catch (IncompatibleThreadStateException e) {
             throw new IllegalStateException(e);
         }
@@ -46,7 +61,7 @@ final class EventDelegate extends GroovyObjectSupport {
 
     public void setProperty(String property, Object newValue) {
         try {
-            JDICategory.propertyMissing(thread.frame(0),property,newValue);
+            JDICategory.propertyMissing(ValueCache.topFrame(thread),property,newValue);
         } catch (IncompatibleThreadStateException e) {
             throw new IllegalStateException(e);
         }
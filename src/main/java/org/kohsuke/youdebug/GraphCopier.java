@@ -0,0 +1,163 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.Field;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.PrimitiveValue;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies the object graph reachable from a remote object into local maps and lists, within bounds.
+ *
+ * <p>
+ * Objects become {@link LinkedHashMap}s of their instance fields, plus the {@link #CLASS} and {@link #ID} entries.
+ * Arrays become {@link List}s, strings and boxed primitives become their local counterparts.
+ * An object that's already copied elsewhere in the graph, or that's beyond the depth or the object count limit,
+ * becomes a map with just the {@link #CLASS} and {@link #ID} entries, so the result never has cycles,
+ * and can be printed or compared as is.
+ *
+ * <p>
+ * The graph is copied breadth first, so that when the object count limit is hit, what's left out is the farthest
+ * from the root. All the fields of an object are read in one round trip, and arrays in chunks.
+ */
+final class GraphCopier {
+    private final int maxDepth;
+    private final int maxObjects;
+    private final int maxArrayLength;
+
+    /**
+     * Objects already copied or about to be, by {@link ObjectReference#uniqueID()}.
+     */
+    private final Set<Long> seen = new HashSet<Long>();
+    private final LinkedList<Node> queue = new LinkedList<Node>();
+    /**
+     * Instance fields of each type, so that we don't list them for every object of the same type.
+     */
+    private final Map<ReferenceType,List<Field>> fields = new HashMap<ReferenceType,List<Field>>();
+    private int objects;
+
+    GraphCopier(int maxDepth, int maxObjects, int maxArrayLength) {
+        this.maxDepth = maxDepth;
+        this.maxObjects = maxObjects;
+        this.maxArrayLength = maxArrayLength;
+    }
+
+    /**
+     * An object that's been given its local counterpart, but whose fields or elements are yet to be copied.
+     */
+    private static final class Node {
+        final ObjectReference ref;
+        final int depth;
+        final Object local;
+
+        Node(ObjectReference ref, int depth, Object local) {
+            this.ref = ref;
+            this.depth = depth;
+            this.local = local;
+        }
+    }
+
+    Object copy(Value root) {
+        Object r = convert(root,1);
+        while (!queue.isEmpty()) {
+            Node n = queue.removeFirst();
+            if (n.ref instanceof ArrayReference)
+                fillArray((ArrayReference)n.ref,n.depth,(List<Object>)n.local);
+            else
+                fillObject(n.ref,n.depth,(Map<String,Object>)n.local);
+        }
+        return r;
+    }
+
+    /**
+     * Converts a value at the given depth to its local counterpart.
+     * Objects to be expanded are queued and filled in later.
+     */
+    private Object convert(Value v, int depth) {
+        if (v==null)    return null;
+        if (v instanceof PrimitiveValue || v instanceof StringReference)
+            return Variable.unwrap(v);
+
+        ObjectReference o = (ObjectReference)v;
+        ReferenceType t = o.referenceType();
+        if (BOXES.contains(t.name()))
+            return Variable.unwrap(o.getValue(t.fieldByName("value")));
+
+        if (depth>maxDepth || objects>=maxObjects || !seen.add(o.uniqueID()))
+            return reference(o);
+
+        objects++;
+        Object local;
+        if (o instanceof ArrayReference) {
+            local = new ArrayList<Object>();
+        } else {
+            Map<String,Object> m = new LinkedHashMap<String,Object>();
+            m.put(CLASS,t.name());
+            m.put(ID,o.uniqueID());
+            local = m;
+        }
+        queue.add(new Node(o,depth,local));
+        return local;
+    }
+
+    private Map<String,Object> reference(ObjectReference o) {
+        Map<String,Object> m = new LinkedHashMap<String,Object>();
+        m.put(CLASS,o.referenceType().name());
+        m.put(ID,o.uniqueID());
+        return m;
+    }
+
+    private void fillObject(ObjectReference o, int depth, Map<String,Object> m) {
+        List<Field> fs = fieldsOf(o.referenceType());
+        Map<Field,Value> values = o.getValues(fs);
+        for (Field f : fs)
+            if (!m.containsKey(f.name()))   // fields of the subtype hide those of the supertype
+                m.put(f.name(), convert(values.get(f),depth+1));
+    }
+
+    private void fillArray(ArrayReference a, final int depth, final List<Object> l) {
+        ArrayAccess.forEach(a,0,Math.min(a.length(),maxArrayLength),new ArrayAccess.Visitor() {
+            public boolean visit(int i, Value v) {
+                l.add(convert(v,depth+1));
+                return true;
+            }
+        });
+    }
+
+    private List<Field> fieldsOf(ReferenceType t) {
+        List<Field> r = fields.get(t);
+        if (r==null) {
+            r = new ArrayList<Field>();
+            for (Field f : t.allFields())
+                if (!f.isStatic())
+                    r.add(f);
+            fields.put(t,r);
+        }
+        return r;
+    }
+
+    /**
+     * Key of the class name of the object in the map that represents it.
+     */
+    static final String CLASS = "@class";
+    /**
+     * Key of the {@link ObjectReference#uniqueID()} of the object in the map that represents it.
+     */
+    static final String ID = "@id";
+
+    private static final Set<String> BOXES = new HashSet<String>(Arrays.asList(
+            Boolean.class.getName(), Byte.class.getName(), Character.class.getName(), Short.class.getName(),
+            Integer.class.getName(), Long.class.getName(), Float.class.getName(), Double.class.getName()));
+}
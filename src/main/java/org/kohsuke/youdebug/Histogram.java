@@ -0,0 +1,167 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Number of live instances of each class in the target JVM, taken with {@link VirtualMachine#instanceCounts(List)}.
+ *
+ * <p>
+ * Unlike a heap dump, this only asks the target JVM to count, so it's cheap enough to take repeatedly,
+ * and the {@linkplain #diff(Histogram) difference} between two of them shows which classes are growing.
+ * Classes of the same name from different class loaders are counted together.
+ *
+ * @see VM#histogram(String[])
+ */
+public final class Histogram {
+    /**
+     * Class name to the number of instances.
+     */
+    private final Map<String,Long> counts;
+
+    private Histogram(Map<String,Long> counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Counts the instances of the classes whose names match any of the given patterns,
+     * which are class names optionally starting or ending with '*', or of all the classes if there are no patterns.
+     */
+    /*package*/ static Histogram take(VirtualMachine vm, String... patterns) {
+        if (!vm.canGetInstanceInfo())
+            throw new UnsupportedOperationException("The target JVM can't count instances");
+
+        List<ReferenceType> types = new ArrayList<ReferenceType>();
+        for (ReferenceType t : vm.allClasses())
+            if (matches(t.name(),patterns))
+                types.add(t);
+
+        long[] n = vm.instanceCounts(types);   // one round trip for all the types
+        Map<String,Long> counts = new HashMap<String,Long>();
+        for (int i=0; i<n.length; i++)
+            add(counts,types.get(i).name(),n[i]);
+        return new Histogram(counts);
+    }
+
+    private static boolean matches(String name, String... patterns) {
+        if (patterns==null || patterns.length==0)   return true;
+        for (String p : patterns)
+            if (ClassPrepareMultiplexer.matches(p,name))
+                return true;
+        return false;
+    }
+
+    private static void add(Map<String,Long> counts, String name, long n) {
+        Long old = counts.get(name);
+        counts.put(name, old==null ? n : old+n);
+    }
+
+    /**
+     * Number of instances of the given class.
+     */
+    public long getCount(String className) {
+        Long n = counts.get(className);
+        return n==null ? 0 : n;
+    }
+
+    /**
+     * Total number of instances of all the classes.
+     */
+    public long getTotal() {
+        long n=0;
+        for (long c : counts.values())
+            n += c;
+        return n;
+    }
+
+    /**
+     * Names of the classes in this histogram.
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(new TreeSet<String>(counts.keySet()));
+    }
+
+    /**
+     * Classes with the most instances, or that grew the most in a {@linkplain #diff(Histogram) difference}, first.
+     */
+    public List<Entry<String,Long>> top(int n) {
+        List<Entry<String,Long>> entries = new ArrayList<Entry<String,Long>>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String,Long>>() {
+            public int compare(Entry<String,Long> a, Entry<String,Long> b) {
+                int r = b.getValue().compareTo(a.getValue());
+                return r!=0 ? r : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return entries.subList(0,Math.min(n,entries.size()));
+    }
+
+    /**
+     * Change in the number of instances since the given histogram was taken.
+     * Classes whose counts didn't change are left out, and those that shrank have negative counts.
+     */
+    public Histogram diff(Histogram before) {
+        Map<String,Long> r = new HashMap<String,Long>();
+        for (Entry<String,Long> e : counts.entrySet())
+            add(r,e.getKey(),e.getValue());
+        for (Entry<String,Long> e : before.counts.entrySet())
+            add(r,e.getKey(),-e.getValue());
+        r.values().removeAll(Collections.singleton(0L));
+        return new Histogram(r);
+    }
+
+    /**
+     * Given histograms in the order they were taken, finds the classes that grew between every two consecutive ones,
+     * which are the likely leaks, and how much they grew in total.
+     */
+    public static Histogram growing(List<Histogram> histograms) {
+        if (histograms.size()<2)
+            throw new IllegalArgumentException("Need at least two histograms but got "+histograms.size());
+
+        Histogram total = histograms.get(histograms.size()-1).diff(histograms.get(0));
+        Map<String,Long> r = new HashMap<String,Long>();
+        OUTER:
+        for (Entry<String,Long> e : total.counts.entrySet()) {
+            for (int i=1; i<histograms.size(); i++)
+                if (histograms.get(i).getCount(e.getKey())<=histograms.get(i-1).getCount(e.getKey()))
+                    continue OUTER;
+            r.put(e.getKey(),e.getValue());
+        }
+        return new Histogram(r);
+    }
+
+    /**
+     * Writes the top n classes, one per line.
+     *
+     * <pre>
+     *    12345 java.lang.String
+     *      678 org.acme.Foo
+     * </pre>
+     */
+    public void write(PrintWriter w, int n) {
+        for (Entry<String,Long> e : top(n))
+            w.printf("%10d %s%n", e.getValue(), e.getKey());
+        w.flush();
+    }
+
+    /**
+     * Top 20 classes, in the format of {@link #write(PrintWriter, int)}.
+     */
+    @Override
+    public String toString() {
+        StringWriter sw = new StringWriter();
+        write(new PrintWriter(sw),20);
+        return sw.toString();
+    }
+}
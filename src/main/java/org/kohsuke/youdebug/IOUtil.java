@@ -0,0 +1,28 @@
+package org.kohsuke.youdebug;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream helpers that the JDK and Groovy 1.6 don't have.
+ */
+final class IOUtil {
+    private IOUtil() {}
+
+    /**
+     * Reads the stream to the end, and closes it.
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int n;
+            while ((n=in.read(b))>=0)
+                buf.write(b,0,n);
+            return buf.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
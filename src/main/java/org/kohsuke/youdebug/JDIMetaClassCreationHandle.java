@@ -0,0 +1,44 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Mirror;
+import groovy.lang.GroovySystem;
+import groovy.lang.MetaClass;
+import groovy.lang.MetaClassRegistry;
+import groovy.lang.MetaClassRegistry.MetaClassCreationHandle;
+
+/**
+ * Gives the JDI implementation classes the {@code methodMissing}/{@code propertyMissing} handlers
+ * of {@link JDICategory} at the time Groovy creates their metaclasses.
+ *
+ * <p>
+ * This way, the handlers are only set up for the JDI types that are actually used, when they are first used,
+ * instead of setting them all up when {@link JDICategory} is loaded, which used to take a good part of the
+ * startup time.
+ */
+final class JDIMetaClassCreationHandle extends MetaClassCreationHandle {
+    private final MetaClassCreationHandle base;
+
+    private JDIMetaClassCreationHandle(MetaClassCreationHandle base) {
+        this.base = base;
+    }
+
+    @Override
+    protected MetaClass createNormalMetaClass(Class theClass, MetaClassRegistry registry) {
+        if (Mirror.class.isAssignableFrom(theClass) && !theClass.isInterface()) {
+            MetaClass mc = JDICategory.createMetaClass(theClass);
+            if (mc!=null)   return mc;
+        }
+        return base.create(theClass,registry);
+    }
+
+    /**
+     * Installs the handle, unless it's already installed. This needs to happen before Groovy
+     * creates the metaclass of any JDI implementation class.
+     */
+    static synchronized void install() {
+        MetaClassRegistry registry = GroovySystem.getMetaClassRegistry();
+        MetaClassCreationHandle h = registry.getMetaClassCreationHandler();
+        if (!(h instanceof JDIMetaClassCreationHandle))
+            registry.setMetaClassCreationHandle(new JDIMetaClassCreationHandle(h));
+    }
+}
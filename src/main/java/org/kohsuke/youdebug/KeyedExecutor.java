@@ -0,0 +1,76 @@
+package org.kohsuke.youdebug;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on a fixed number of threads, such that tasks submitted with the same key
+ * are executed one at a time in the order of submission, while tasks of different keys
+ * can run concurrently.
+ *
+ * <p>
+ * Each key with pending tasks has its own queue, which is drained by whichever thread of the pool
+ * is free, so tasks of different keys never wait for each other as long as there are idle threads.
+ *
+ * <p>
+ * {@link VM} uses this to run event handlers in parallel while keeping the events
+ * of a single target thread in order.
+ */
+class KeyedExecutor {
+    private final ExecutorService pool;
+    /**
+     * Tasks waiting behind the one that's running, for each key that has a task running.
+     */
+    private final Map<Object,LinkedList<Runnable>> queues = new HashMap<Object,LinkedList<Runnable>>();
+
+    KeyedExecutor(int n, ThreadFactory factory) {
+        if (n<=0)   throw new IllegalArgumentException("Invalid number of threads: "+n);
+        pool = Executors.newFixedThreadPool(n,factory);
+    }
+
+    public void execute(final Object key, final Runnable task) {
+        synchronized (queues) {
+            LinkedList<Runnable> q = queues.get(key);
+            if (q!=null) {
+                q.add(task);    // the thread draining this key will get to it
+                return;
+            }
+            queues.put(key,new LinkedList<Runnable>());
+        }
+        pool.execute(new Runnable() {
+            public void run() {
+                Runnable next = task;
+                while (next!=null) {
+                    try {
+                        next.run();
+                    } catch (RuntimeException e) {
+                        // keep going, or the rest of the tasks of this key would never run
+                        LOGGER.log(Level.WARNING, "Task failed for "+key, e);
+                    }
+                    synchronized (queues) {
+                        next = queues.get(key).poll();
+                        if (next==null)
+                            queues.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new tasks and waits for the already submitted ones to complete.
+     */
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(KeyedExecutor.class.getName());
+}
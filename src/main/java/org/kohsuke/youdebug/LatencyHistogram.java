@@ -0,0 +1,79 @@
+package org.kohsuke.youdebug;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations for computing percentiles.
+ *
+ * <p>
+ * Each power of 2 is divided into 8 buckets, so the percentiles are accurate to within 12.5%.
+ * The maximum is exact.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1<<SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64*SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos<0)    nanos=0;
+        buckets.incrementAndGet(indexOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        while (true) {
+            long m = max.get();
+            if (nanos<=m || max.compareAndSet(m,nanos))
+                break;
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getTotal(TimeUnit unit) {
+        return unit.convert(total.get(),TimeUnit.NANOSECONDS);
+    }
+
+    long getMax(TimeUnit unit) {
+        return unit.convert(max.get(),TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the upper bound of the bucket that the given percentile falls into.
+     *
+     * @param p
+     *      0 to 100.
+     */
+    long getPercentile(double p, TimeUnit unit) {
+        long n = count.get();
+        if (n==0)   return 0;
+        long rank = Math.max(1,(long)Math.ceil(n*p/100));
+        long seen = 0;
+        for (int i=0; i<buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen>=rank)
+                return unit.convert(Math.min(upperBoundOf(i),max.get()),TimeUnit.NANOSECONDS);
+        }
+        return getMax(unit);
+    }
+
+    private static int indexOf(long v) {
+        if (v<SUB_BUCKETS)  return (int)v;
+        int exp = 63-Long.numberOfLeadingZeros(v);   // v is in [2^exp,2^(exp+1))
+        int sub = (int)(v>>>(exp-SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+        return (exp-SUB_BUCKET_BITS+1)*SUB_BUCKETS+sub;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index<SUB_BUCKETS)  return index;
+        int exp = index/SUB_BUCKETS+SUB_BUCKET_BITS-1;
+        long sub = index%SUB_BUCKETS;
+        return ((SUB_BUCKETS+sub+1)<<(exp-SUB_BUCKET_BITS))-1;
+    }
+}
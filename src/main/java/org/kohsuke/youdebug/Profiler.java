@@ -0,0 +1,137 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Location;
+import com.sun.jdi.Method;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.VirtualMachine;
+import org.kohsuke.youdebug.ThreadDumper.ThreadInfo;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling profiler that periodically captures the stacks of all the threads in the target JVM,
+ * and aggregates them into the collapsed stack format that flame graph tools take.
+ *
+ * <p>
+ * Each sample suspends the target JVM only while the stacks are read. Samples are aggregated
+ * on a separate thread, so that formatting doesn't delay the next sample. The root of each stack
+ * is the thread state, so that, for example, time spent waiting can be told apart from time spent running.
+ */
+public final class Profiler {
+    private final VirtualMachine vm;
+    private final ThreadDumper dumper = new ThreadDumper();
+    /**
+     * Collapsed stacks to the number of times they were seen. Only touched by the aggregator thread until {@link #run} returns.
+     */
+    private final Map<String,Long> stacks = new HashMap<String,Long>();
+    private final Map<Method,String> names = new HashMap<Method,String>();
+    private int samples;
+
+    public Profiler(VM vm) {
+        this.vm = vm.getVirtualMachine();
+    }
+
+    /**
+     * Takes samples at the given rate for the given duration, or until the target JVM goes away.
+     *
+     * @param rate
+     *      Samples per second. If taking a sample takes longer than the interval, samples are skipped.
+     */
+    public void run(int rate, long duration, TimeUnit unit) throws InterruptedException {
+        if (rate<=0)    throw new IllegalArgumentException("Invalid sampling rate: "+rate);
+
+        ExecutorService aggregator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"YouDebug profiler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        long interval = TimeUnit.SECONDS.toNanos(1)/rate;
+        long end = System.nanoTime()+unit.toNanos(duration);
+        try {
+            for (long next=System.nanoTime(); next<end; next+=interval) {
+                long wait = next-System.nanoTime();
+                if (wait>0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                else if (wait<-interval)
+                    next = System.nanoTime();   // fell behind. skip the missed samples
+
+                final List<ThreadInfo> sample = dumper.captureAll(vm,false,false);
+                aggregator.execute(new Runnable() {
+                    public void run() {
+                        aggregate(sample);
+                    }
+                });
+            }
+        } catch (VMDisconnectedException e) {
+            // target is gone. report what we have
+        } finally {
+            aggregator.shutdown();
+            aggregator.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Number of samples taken.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Writes the collapsed stacks, most frequent first.
+     * Each line is the thread state and the frames from the outermost one, separated by ';', followed by the count.
+     */
+    public void write(PrintWriter out) {
+        List<Entry<String,Long>> entries = new ArrayList<Entry<String,Long>>(stacks.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String,Long>>() {
+            public int compare(Entry<String,Long> a, Entry<String,Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        for (Entry<String,Long> e : entries) {
+            out.print(e.getKey());
+            out.print(' ');
+            out.println(e.getValue());
+        }
+        out.flush();
+    }
+
+    private void aggregate(List<ThreadInfo> sample) {
+        samples++;
+        StringBuilder buf = new StringBuilder();
+        for (ThreadInfo t : sample) {
+            if (t.stack.isEmpty())  continue;
+
+            buf.setLength(0);
+            buf.append(t.status);
+            for (int i=t.stack.size()-1; i>=0; i--)
+                buf.append(';').append(nameOf(t.stack.get(i)));
+
+            String key = buf.toString();
+            Long n = stacks.get(key);
+            stacks.put(key, n==null ? 1 : n+1);
+        }
+    }
+
+    private String nameOf(Location l) {
+        Method m = l.method();
+        String s = names.get(m);
+        if (s==null)
+            names.put(m, s=m.declaringType().name()+'.'+m.name());
+        return s;
+    }
+}
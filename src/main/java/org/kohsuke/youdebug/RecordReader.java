@@ -0,0 +1,294 @@
+package org.kohsuke.youdebug;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.kohsuke.youdebug.Recorder.*;
+
+/**
+ * Reads the records written by {@link Recorder}, and converts them to text formats.
+ *
+ * <pre>
+ * RecordReader r = new RecordReader(file);
+ * Record rec;
+ * while ((rec=r.next())!=null)
+ *     ...
+ * r.close();
+ * </pre>
+ */
+public final class RecordReader {
+    private final DataInputStream in;
+    private final long startTime;
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * One event recorded.
+     */
+    public static final class Record {
+        /**
+         * Milliseconds since the epoch.
+         */
+        public final long time;
+        /**
+         * Description of the event request, the name of the thread, and the location of the event,
+         * each of which can be null if the event didn't have one.
+         */
+        public final String request, thread, location;
+        public final Map<String,Object> values;
+
+        Record(long time, String request, String thread, String location, Map<String,Object> values) {
+            this.time = time;
+            this.request = request;
+            this.thread = thread;
+            this.location = location;
+            this.values = values;
+        }
+    }
+
+    public RecordReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic,MAGIC))
+            throw new IOException(file+" is not a record file");
+        startTime = in.readLong();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return
+     *      null at the end of the file.
+     */
+    public Record next() throws IOException {
+        while (true) {
+            int tag;
+            try {
+                tag = in.readByte();
+            } catch (EOFException e) {
+                return null;
+            }
+            switch (tag) {
+            case TAG_END:
+                return null;
+            case TAG_STRING:
+                strings.add(readString());
+                continue;
+            case TAG_EVENT:
+                long time = startTime+readVarLong()/1000;
+                String request = readRef();
+                String thread = readRef();
+                String location = readRef();
+                int n = (int)readVarLong();
+                Map<String,Object> values = new LinkedHashMap<String,Object>();
+                for (int i=0; i<n; i++) {
+                    String name = readRef();
+                    values.put(name,readValue());
+                }
+                return new Record(time,request,thread,location,values);
+            default:
+                throw new IOException("Corrupted record file. Unexpected tag "+tag);
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Object readValue() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case VALUE_NULL:    return null;
+        case VALUE_FALSE:   return false;
+        case VALUE_TRUE:    return true;
+        case VALUE_LONG:
+            long l = readVarLong();
+            return (l>>>1)^-(l&1);
+        case VALUE_DOUBLE:  return in.readDouble();
+        case VALUE_REF:     return readRef();
+        case VALUE_OBJECT:
+            String type = readRef();
+            return type+'@'+readVarLong();
+        case VALUE_STRING:  return readString();
+        default:
+            throw new IOException("Corrupted record file. Unexpected value tag "+tag);
+        }
+    }
+
+    private String readRef() throws IOException {
+        int r = (int)readVarLong();
+        return r==0 ? null : strings.get(r-1);
+    }
+
+    private String readString() throws IOException {
+        byte[] b = new byte[(int)readVarLong()];
+        in.readFully(b);
+        return new String(b,"UTF-8");
+    }
+
+    private long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift=0; ; shift+=7) {
+            byte b = in.readByte();
+            v |= (long)(b&0x7F)<<shift;
+            if ((b&0x80)==0)    return v;
+        }
+    }
+
+    /**
+     * Writes all the records in the given file as CSV, one column per name.
+     */
+    public static void toCSV(File file, PrintWriter out) throws IOException {
+        // first pass to find all the names
+        Set<String> names = new LinkedHashSet<String>();
+        RecordReader r = new RecordReader(file);
+        try {
+            Record rec;
+            while ((rec=r.next())!=null)
+                names.addAll(rec.values.keySet());
+        } finally {
+            r.close();
+        }
+
+        out.print("time,request,thread,location");
+        for (String n : names)
+            out.print(','+csv(n));
+        out.println();
+
+        r = new RecordReader(file);
+        try {
+            Record rec;
+            while ((rec=r.next())!=null) {
+                out.print(rec.time+","+csv(rec.request)+','+csv(rec.thread)+','+csv(rec.location));
+                for (String n : names)
+                    out.print(','+csv(rec.values.get(n)));
+                out.println();
+            }
+        } finally {
+            r.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes all the records in the given file as JSON, one object per line.
+     */
+    public static void toJSON(File file, PrintWriter out) throws IOException {
+        RecordReader r = new RecordReader(file);
+        try {
+            Record rec;
+            while ((rec=r.next())!=null) {
+                out.print("{\"time\":"+rec.time+",\"request\":"+json(rec.request)+",\"thread\":"+json(rec.thread)
+                        +",\"location\":"+json(rec.location)+",\"values\":{");
+                boolean first = true;
+                for (Entry<String,Object> e : rec.values.entrySet()) {
+                    if (!first) out.print(',');
+                    first = false;
+                    out.print(json(e.getKey())+':'+json(e.getValue()));
+                }
+                out.println("}}");
+            }
+        } finally {
+            r.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the number of records per request and location, and the count/min/average/max of numeric values.
+     */
+    public static void summarize(File file, PrintWriter out) throws IOException {
+        final Map<String,long[]> counts = new TreeMap<String,long[]>();
+        Map<String,double[]> numbers = new TreeMap<String,double[]>();
+        RecordReader r = new RecordReader(file);
+        try {
+            Record rec;
+            while ((rec=r.next())!=null) {
+                String key = rec.request+" at "+rec.location;
+                long[] c = counts.get(key);
+                if (c==null)    counts.put(key,c=new long[1]);
+                c[0]++;
+
+                for (Entry<String,Object> e : rec.values.entrySet()) {
+                    if (!(e.getValue() instanceof Number))  continue;
+                    double v = ((Number)e.getValue()).doubleValue();
+                    double[] s = numbers.get(e.getKey());
+                    if (s==null)    numbers.put(e.getKey(),s=new double[]{0,0,Double.MAX_VALUE,-Double.MAX_VALUE});
+                    s[0]++;
+                    s[1]+=v;
+                    s[2]=Math.min(s[2],v);
+                    s[3]=Math.max(s[3],v);
+                }
+            }
+        } finally {
+            r.close();
+        }
+
+        List<String> keys = new ArrayList<String>(counts.keySet());
+        Collections.sort(keys,new Comparator<String>() {
+            public int compare(String a, String b) {
+                long x=counts.get(a)[0], y=counts.get(b)[0];
+                return x<y ? 1 : x==y ? 0 : -1;
+            }
+        });
+        for (String k : keys)
+            out.printf("%10d  %s\n", counts.get(k)[0], k);
+        if (!numbers.isEmpty()) {
+            out.println();
+            out.printf("%-20s %10s %14s %14s %14s\n","name","count","min","avg","max");
+            for (Entry<String,double[]> e : numbers.entrySet()) {
+                double[] s = e.getValue();
+                out.printf("%-20s %10d %14.3f %14.3f %14.3f\n",e.getKey(),(long)s[0],s[2],s[1]/s[0],s[3]);
+            }
+        }
+        out.flush();
+    }
+
+    private static String csv(Object o) {
+        if (o==null)    return "";
+        String s = o.toString();
+        if (s.indexOf(',')<0 && s.indexOf('"')<0 && s.indexOf('\n')<0)
+            return s;
+        return '"'+s.replace("\"","\"\"")+'"';
+    }
+
+    private static String json(Object o) {
+        if (o instanceof Double && (((Double)o).isNaN() || ((Double)o).isInfinite()))
+            o = o.toString();   // not representable as a JSON number
+        if (o==null || o instanceof Boolean || o instanceof Number)
+            return String.valueOf(o);
+        String s = o.toString();
+        StringBuilder buf = new StringBuilder(s.length()+2).append('"');
+        for (int i=0; i<s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+            case '"':   buf.append("\\\""); break;
+            case '\\':  buf.append("\\\\"); break;
+            case '\n':  buf.append("\\n"); break;
+            case '\r':  buf.append("\\r"); break;
+            case '\t':  buf.append("\\t"); break;
+            default:
+                if (ch<0x20)    buf.append(String.format("\\u%04x",(int)ch));
+                else            buf.append(ch);
+            }
+        }
+        return buf.append('"').toString();
+    }
+}
@@ -0,0 +1,281 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Locatable;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.LocatableEvent;
+import com.sun.jdi.request.EventRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Appends values captured in event handlers to a compact binary log, for {@link RecordReader} to analyze later.
+ *
+ * <p>
+ * Each record consists of the time, the request, the thread, and the location of the event, followed by
+ * the captured name/value pairs. Strings, such as names, thread names, and locations, are written once
+ * to the string table and referred to by their index afterward, so that a record typically takes
+ * a few dozen bytes. The file is memory-mapped, so appending a record doesn't involve a system call.
+ *
+ * <h2>Format</h2>
+ * <pre>
+ * file   := MAGIC startTime:long (string | event)* END?
+ * string := 1 length:varint utf8-bytes          (gets the next index in the string table, from 0)
+ * event  := 2 time:varlong request:ref thread:ref location:ref count:varint (name:ref value)*
+ * ref    := 0 for none, or 1+ the index of the string
+ * value  := 0 (null) | 1 (false) | 2 (true) | 3 zigzag-varlong | 4 double | 5 ref
+ *         | 6 type:ref uniqueID:varlong (object) | 7 length:varint utf8-bytes (string not in the table)
+ * </pre>
+ * The time of an event is in microseconds since the start time, which is in milliseconds since the epoch.
+ * The unwritten part at the end of the file, if any, is filled with zeros, which reads as END.
+ */
+public final class Recorder {
+    private final FileChannel channel;
+    /**
+     * Position of {@link #buf} in the file.
+     */
+    private long base;
+    private MappedByteBuffer buf;
+    /**
+     * Records are encoded here first, so that we know how much space they need.
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String,Integer> strings = new HashMap<String,Integer>();
+    private final Map<EventRequest,Integer> requests = new HashMap<EventRequest,Integer>();
+    private final Map<ThreadReference,Integer> threads = new HashMap<ThreadReference,Integer>();
+    private final Map<Location,Integer> locations = new HashMap<Location,Integer>();
+    private boolean closed;
+
+    public Recorder(File file) throws IOException {
+        channel = new RandomAccessFile(file,"rw").getChannel();
+        channel.truncate(0);
+        buf = channel.map(MapMode.READ_WRITE,0,CHUNK);
+        buf.put(MAGIC);
+        buf.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a record of the given event with the given values.
+     *
+     * @param e
+     *      The event being handled, or null if none.
+     */
+    public synchronized void record(Event e, Map<?,?> values) {
+        if (closed)     throw new IllegalStateException("Recorder is already closed");
+
+        // resolve the strings first, since they are written ahead of the event
+        EventRequest q = e!=null ? e.request() : null;
+        int request = q!=null ? requestRef(q) : 0;
+        int thread = e instanceof LocatableEvent ? threadRef(((LocatableEvent)e).thread()) : 0;
+        int location = e instanceof Locatable ? locationRef(((Locatable)e).location()) : 0;
+
+        int n = values.size();
+        int[] names = new int[n];
+        Object[] vals = new Object[n];
+        int i=0;
+        for (Entry<?,?> v : values.entrySet()) {
+            names[i] = ref(String.valueOf(v.getKey()));
+            vals[i] = normalize(v.getValue());
+            i++;
+        }
+
+        scratch.clear();
+        put(TAG_EVENT);
+        putVarLong((System.nanoTime()-startNanos)/1000);
+        putVarLong(request);
+        putVarLong(thread);
+        putVarLong(location);
+        putVarLong(n);
+        for (i=0; i<n; i++) {
+            putVarLong(names[i]);
+            putValue(vals[i]);
+        }
+        flushScratch();
+    }
+
+    /**
+     * Writes out everything and closes the file.
+     */
+    public synchronized void close() throws IOException {
+        if (closed)     return;
+        closed = true;
+        buf.force();
+        channel.truncate(base+buf.position());
+        channel.close();
+    }
+
+    private int requestRef(EventRequest q) {
+        Integer r = requests.get(q);
+        if (r==null)    requests.put(q, r=ref(Statistics.describe(q)));
+        return r;
+    }
+
+    private int threadRef(ThreadReference t) {
+        Integer r = threads.get(t);
+        if (r==null)    threads.put(t, r=ref(t.name()));
+        return r;
+    }
+
+    private int locationRef(Location l) {
+        Integer r = locations.get(l);
+        if (r==null)    locations.put(l, r=ref(l.declaringType().name()+'.'+l.method().name()+':'+l.lineNumber()));
+        return r;
+    }
+
+    /**
+     * Returns the reference to the given string, writing it to the string table if it's not there yet.
+     */
+    private int ref(String s) {
+        Integer r = strings.get(s);
+        if (r==null) {
+            scratch.clear();
+            put(TAG_STRING);
+            putString(s);
+            flushScratch();
+            strings.put(s, r=strings.size()+1);
+        }
+        return r;
+    }
+
+    /**
+     * Turns a value into what {@link #putValue(Object)} understands, interning strings and types on the way.
+     */
+    private Object normalize(Object v) {
+        if (v instanceof StringReference)
+            v = ((StringReference)v).value();
+        if (v instanceof CharSequence) {
+            String s = v.toString();
+            if (strings.containsKey(s) || strings.size()<MAX_STRINGS)
+                return ref(s);
+            return s;   // written inline, so that unique values don't grow the table without bounds
+        }
+        if (v instanceof ObjectReference) {
+            ObjectReference o = (ObjectReference)v;
+            return new long[]{ref(o.referenceType().name()),o.uniqueID()};
+        }
+        if (v instanceof Character)
+            return (long)((Character)v).charValue();
+        if (v instanceof Number && !(v instanceof Float || v instanceof Double))
+            return ((Number)v).longValue();
+        if (v==null || v instanceof Boolean || v instanceof Number)
+            return v;
+        return normalize(v.toString());
+    }
+
+    private void putValue(Object v) {
+        if (v==null)
+            put(VALUE_NULL);
+        else if (v instanceof Boolean)
+            put((Boolean)v ? VALUE_TRUE : VALUE_FALSE);
+        else if (v instanceof Integer) {
+            put(VALUE_REF);
+            putVarLong((Integer)v);
+        } else if (v instanceof Long) {
+            put(VALUE_LONG);
+            long l = (Long)v;
+            putVarLong((l<<1)^(l>>63));
+        } else if (v instanceof Number) {
+            put(VALUE_DOUBLE);
+            ensure(8);
+            scratch.putDouble(((Number)v).doubleValue());
+        } else if (v instanceof long[]) {
+            long[] o = (long[])v;
+            put(VALUE_OBJECT);
+            putVarLong(o[0]);
+            putVarLong(o[1]);
+        } else {
+            put(VALUE_STRING);
+            putString((String)v);
+        }
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        scratch.put(b);
+    }
+
+    private void putVarLong(long v) {
+        ensure(10);
+        while ((v&~0x7FL)!=0) {
+            scratch.put((byte)((v&0x7F)|0x80));
+            v >>>= 7;
+        }
+        scratch.put((byte)v);
+    }
+
+    private void putString(String s) {
+        byte[] b;
+        try {
+            b = s.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        putVarLong(b.length);
+        ensure(b.length);
+        scratch.put(b);
+    }
+
+    private void ensure(int n) {
+        if (scratch.remaining()<n) {
+            ByteBuffer b = ByteBuffer.allocate(Math.max(scratch.capacity()*2,scratch.position()+n));
+            scratch.flip();
+            b.put(scratch);
+            scratch = b;
+        }
+    }
+
+    /**
+     * Appends what's encoded in the scratch buffer to the file, mapping more of the file as needed.
+     */
+    private void flushScratch() {
+        scratch.flip();
+        if (buf.remaining()<scratch.remaining()) {
+            try {
+                base += buf.position();
+                buf = channel.map(MapMode.READ_WRITE,base,Math.max(CHUNK,scratch.remaining()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to extend the record file",e);
+            }
+        }
+        buf.put(scratch);
+    }
+
+    static final byte[] MAGIC = {'Y','D','R','1'};
+
+    static final byte TAG_END = 0;
+    static final byte TAG_STRING = 1;
+    static final byte TAG_EVENT = 2;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_FALSE = 1;
+    static final byte VALUE_TRUE = 2;
+    static final byte VALUE_LONG = 3;
+    static final byte VALUE_DOUBLE = 4;
+    static final byte VALUE_REF = 5;
+    static final byte VALUE_OBJECT = 6;
+    static final byte VALUE_STRING = 7;
+
+    /**
+     * Size of the region of the file mapped at once.
+     */
+    private static final int CHUNK = 16*1024*1024;
+
+    /**
+     * Beyond this many strings in the string table, new string values are written inline.
+     */
+    private static final int MAX_STRINGS = 65536;
+}
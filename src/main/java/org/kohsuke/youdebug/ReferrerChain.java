@@ -0,0 +1,102 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ArrayReference;
+import com.sun.jdi.ClassObjectReference;
+import com.sun.jdi.Field;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Finds out what keeps an object alive, by following {@link ObjectReference#referringObjects(long)}
+ * back from it, one referrer at a time.
+ *
+ * <p>
+ * The chain ends at a static field, which is as close to a GC root as JDI lets us see, at an object that nothing
+ * else refers to, or at the depth limit. Each step says where the reference is held, like {@code org.acme.Foo.cache}
+ * for a field or {@code java.lang.Object[][3]} for an array element.
+ */
+final class ReferrerChain {
+    private ReferrerChain() {}
+
+    /**
+     * @return
+     *      Steps from the farthest referrer found down to the one that refers to the given object directly.
+     */
+    static List<String> of(ObjectReference o, int maxDepth) {
+        LinkedList<String> r = new LinkedList<String>();
+        Set<Long> seen = new HashSet<Long>();
+        seen.add(o.uniqueID());
+
+        ObjectReference cur = o;
+        for (int d=0; d<maxDepth; d++) {
+            ObjectReference next = null;
+            for (ObjectReference ref : cur.referringObjects(MAX_REFERRERS))
+                if (seen.add(ref.uniqueID())) {
+                    next = ref;
+                    break;
+                }
+            if (next==null) break;
+
+            r.addFirst(describe(next,cur));
+            if (next instanceof ClassObjectReference)
+                break;  // a static field
+            cur = next;
+        }
+        return r;
+    }
+
+    /**
+     * Describes where the referrer holds the reference to the object.
+     */
+    private static String describe(ObjectReference referrer, final ObjectReference o) {
+        if (referrer instanceof ClassObjectReference) {
+            ReferenceType t = ((ClassObjectReference)referrer).reflectedType();
+            List<Field> statics = new ArrayList<Field>();
+            for (Field f : t.allFields())
+                if (f.isStatic())
+                    statics.add(f);
+            String f = find(t.getValues(statics),o);
+            return f!=null ? f : t.name()+".class";
+        }
+        if (referrer instanceof ArrayReference) {
+            ArrayReference a = (ArrayReference)referrer;
+            final int[] index = {-1};
+            ArrayAccess.forEach(a,0,a.length(),new ArrayAccess.Visitor() {
+                public boolean visit(int i, Value v) {
+                    if (!o.equals(v))   return true;
+                    index[0] = i;
+                    return false;
+                }
+            });
+            if (index[0]>=0)    return a.referenceType().name()+'['+index[0]+']';
+            return a.referenceType().name();
+        }
+        List<Field> fields = new ArrayList<Field>();
+        for (Field f : referrer.referenceType().allFields())
+            if (!f.isStatic())
+                fields.add(f);
+        String f = find(referrer.getValues(fields),o);
+        return f!=null ? f : referrer.referenceType().name();
+    }
+
+    private static String find(Map<Field,Value> values, ObjectReference o) {
+        for (Entry<Field,Value> e : values.entrySet())
+            if (o.equals(e.getValue()))
+                return e.getKey().declaringType().name()+'.'+e.getKey().name();
+        return null;
+    }
+
+    /**
+     * Number of referrers to ask for at each step. We only follow one, but some of them may have been seen already.
+     */
+    private static final int MAX_REFERRERS = 16;
+}
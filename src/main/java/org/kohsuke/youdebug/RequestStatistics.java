@@ -0,0 +1,91 @@
+package org.kohsuke.youdebug;
+
+import static java.util.concurrent.TimeUnit.*;
+
+/**
+ * How often an event request hit, and how much it cost the target JVM.
+ *
+ * <p>
+ * Requests of the same kind at the same place, such as breakpoints at the same location,
+ * share one instance.
+ *
+ * @see Statistics
+ */
+public final class RequestStatistics implements RequestStatisticsMBean {
+    private final String request;
+    /**
+     * Time the handler took.
+     */
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
+    /**
+     * Time the target JVM (or the thread, depending on the suspend policy) stayed suspended,
+     * from when we received the event until it's resumed.
+     */
+    private final LatencyHistogram suspendedTime = new LatencyHistogram();
+
+    RequestStatistics(String request) {
+        this.request = request;
+    }
+
+    void onHandled(long nanos) {
+        handlerTime.record(nanos);
+    }
+
+    void onResumed(long nanos) {
+        suspendedTime.record(nanos);
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public long getHits() {
+        return handlerTime.getCount();
+    }
+
+    public long getHandlerTimeP50Micros() {
+        return handlerTime.getPercentile(50,MICROSECONDS);
+    }
+
+    public long getHandlerTimeP99Micros() {
+        return handlerTime.getPercentile(99,MICROSECONDS);
+    }
+
+    public long getHandlerTimeMaxMicros() {
+        return handlerTime.getMax(MICROSECONDS);
+    }
+
+    public long getSuspendedTimeP50Micros() {
+        return suspendedTime.getPercentile(50,MICROSECONDS);
+    }
+
+    public long getSuspendedTimeP99Micros() {
+        return suspendedTime.getPercentile(99,MICROSECONDS);
+    }
+
+    public long getSuspendedTimeMaxMicros() {
+        return suspendedTime.getMax(MICROSECONDS);
+    }
+
+    public long getSuspendedTimeTotalMillis() {
+        return suspendedTime.getTotal(MILLISECONDS);
+    }
+
+    public String toString() {
+        return String.format("%-50s %8d hits  handler p50=%s p99=%s max=%s  suspended p50=%s p99=%s max=%s total=%s",
+                request, getHits(),
+                format(handlerTime.getPercentile(50,NANOSECONDS)), format(handlerTime.getPercentile(99,NANOSECONDS)), format(handlerTime.getMax(NANOSECONDS)),
+                format(suspendedTime.getPercentile(50,NANOSECONDS)), format(suspendedTime.getPercentile(99,NANOSECONDS)), format(suspendedTime.getMax(NANOSECONDS)),
+                format(suspendedTime.getTotal(NANOSECONDS)));
+    }
+
+    /**
+     * Formats the duration in a human readable unit.
+     */
+    static String format(long nanos) {
+        if (nanos<10000L)           return nanos+"ns";
+        if (nanos<10000000L)        return NANOSECONDS.toMicros(nanos)+"us";
+        if (nanos<10000000000L)     return NANOSECONDS.toMillis(nanos)+"ms";
+        return NANOSECONDS.toSeconds(nanos)+"s";
+    }
+}
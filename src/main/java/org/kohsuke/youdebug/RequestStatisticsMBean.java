@@ -0,0 +1,16 @@
+package org.kohsuke.youdebug;
+
+/**
+ * JMX view of {@link RequestStatistics}.
+ */
+public interface RequestStatisticsMBean {
+    String getRequest();
+    long getHits();
+    long getHandlerTimeP50Micros();
+    long getHandlerTimeP99Micros();
+    long getHandlerTimeMaxMicros();
+    long getSuspendedTimeP50Micros();
+    long getSuspendedTimeP99Micros();
+    long getSuspendedTimeMaxMicros();
+    long getSuspendedTimeTotalMillis();
+}
@@ -0,0 +1,213 @@
+package org.kohsuke.youdebug;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps compiled scripts on disk, so that running the same script again doesn't pay for the Groovy compilation,
+ * which otherwise takes up a good part of the time between attaching to the target JVM and the first breakpoint.
+ *
+ * <p>
+ * Compiled scripts are keyed by the hash of the script, its name, and the versions of YouDebug and Groovy,
+ * so a change to any of them results in recompilation. Each entry is one file that contains all the classes
+ * compiled from the script, main script class first.
+ */
+public final class ScriptCache {
+    private final File dir;
+
+    public ScriptCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The cache in the user's home directory.
+     */
+    public static ScriptCache getDefault() {
+        return new ScriptCache(new File(System.getProperty("user.home"),".youdebug/scripts"));
+    }
+
+    /**
+     * Returns the script class, compiling the script only if it's not in the cache yet.
+     */
+    public Class<? extends Script> load(GroovyCodeSource source, CompilerConfiguration cc) throws IOException {
+        byte[] text = IOUtil.readFully(source.getInputStream());
+        File f = new File(dir,hash(source.getName(),text)+".classes");
+
+        Map<String,byte[]> classes = null;
+        boolean cached = false;
+        if (f.exists()) {
+            try {
+                classes = read(f);
+                cached = true;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read the compiled script "+f+". Recompiling",e);
+            }
+        }
+        if (classes==null) {
+            classes = compile(source.getName(),text,cc);
+            try {
+                write(f,classes);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to cache the compiled script to "+f,e);
+            }
+        }
+
+        Loader loader = new Loader(getClass().getClassLoader(),classes,cached);
+        try {
+            return loader.loadClass(classes.keySet().iterator().next()).asSubclass(Script.class);
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Checks if the script class returned from {@link #load(GroovyCodeSource, CompilerConfiguration)}
+     * came from the cache, as opposed to being compiled.
+     */
+    public static boolean isCached(Class<? extends Script> script) {
+        ClassLoader cl = script.getClassLoader();
+        return cl instanceof Loader && ((Loader)cl).cached;
+    }
+
+    private Map<String,byte[]> compile(String name, byte[] text, CompilerConfiguration cc) {
+        CompilationUnit cu = new CompilationUnit(cc,null,new GroovyClassLoader(getClass().getClassLoader(),cc));
+        cu.addSource(name,new ByteArrayInputStream(text));
+        cu.compile(Phases.CLASS_GENERATION);
+
+        String main = cu.getFirstClassNode().getName();
+        Map<String,byte[]> classes = new LinkedHashMap<String,byte[]>();
+        for (GroovyClass c : (List<GroovyClass>)cu.getClasses())
+            if (c.getName().equals(main))
+                classes.put(c.getName(),c.getBytes());
+        for (GroovyClass c : (List<GroovyClass>)cu.getClasses())
+            if (!classes.containsKey(c.getName()))
+                classes.put(c.getName(),c.getBytes());
+        return classes;
+    }
+
+    private static Map<String,byte[]> read(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        try {
+            Map<String,byte[]> classes = new LinkedHashMap<String,byte[]>();
+            int n = in.readInt();
+            for (int i=0; i<n; i++) {
+                String name = in.readUTF();
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                classes.put(name,b);
+            }
+            return classes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so that concurrent runs never see a partially written entry.
+     */
+    private void write(File f, Map<String,byte[]> classes) throws IOException {
+        dir.mkdirs();
+        File tmp = File.createTempFile("script",".tmp",dir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(classes.size());
+            for (Entry<String,byte[]> e : classes.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            if (!f.exists())
+                throw new IOException("Failed to rename "+tmp+" to "+f);
+        }
+    }
+
+    private static String hash(String name, byte[] text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((VERSION+'\0'+InvokerHelper.getVersion()+'\0'+name+'\0').getBytes("UTF-8"));
+            md.update(text);
+            StringBuilder buf = new StringBuilder();
+            for (byte b : md.digest())
+                buf.append(String.format("%02x",b&0xFF));
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Defines the classes of one compiled script.
+     */
+    private static final class Loader extends ClassLoader {
+        private final Map<String,byte[]> classes;
+        private final boolean cached;
+
+        Loader(ClassLoader parent, Map<String,byte[]> classes, boolean cached) {
+            super(parent);
+            this.classes = new HashMap<String,byte[]>(classes);
+            this.cached = cached;
+        }
+
+        protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] b = classes.remove(name);
+            if (b==null)    throw new ClassNotFoundException(name);
+            return defineClass(name,b,0,b.length);
+        }
+    }
+
+    /**
+     * Version of YouDebug that compiled scripts depend on. For a development build without a version,
+     * the timestamp of the build serves the purpose.
+     */
+    private static final String VERSION;
+
+    static {
+        String v = ScriptCache.class.getPackage().getImplementationVersion();
+        if (v==null) {
+            long t = 0;
+            try {
+                URL res = VM.class.getResource("VM.class");
+                if (res!=null)  t = res.openConnection().getLastModified();
+            } catch (IOException e) {
+                // no timestamp. the hash still covers the rest
+            }
+            v = "dev-"+t;
+        }
+        VERSION = v;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptCache.class.getName());
+}
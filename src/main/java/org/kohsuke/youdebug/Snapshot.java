@@ -0,0 +1,202 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.Field;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.LocalVariable;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+import groovy.lang.GroovyObjectSupport;
+import groovy.lang.MissingPropertyException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of the variables visible at a breakpoint, taken while the thread was suspended.
+ *
+ * <p>
+ * This is passed to the closure of {@link VM#snapshotBreakpoint(Map, String, int, groovy.lang.Closure)},
+ * which runs after the target thread has been resumed. Variables are resolved in the same order as
+ * they are in a regular breakpoint closure; local variables of the top stack frame, fields of 'this',
+ * then the captured static fields.
+ *
+ * <p>
+ * Primitives and strings are copied into the debugger. Other objects are kept as {@link ObjectReference}s,
+ * whose state can change once the thread resumes.
+ */
+public final class Snapshot extends GroovyObjectSupport {
+    private final String threadName;
+    private final Location location;
+    private final List<Map<String,Object>> frames;
+    private final Map<String,Object> self;
+    private final Map<String,Object> statics;
+    private final long timestamp = System.currentTimeMillis();
+
+    private Snapshot(String threadName, Location location, List<Map<String,Object>> frames, Map<String,Object> self, Map<String,Object> statics) {
+        this.threadName = threadName;
+        this.location = location;
+        this.frames = Collections.unmodifiableList(frames);
+        this.self = self;
+        this.statics = statics;
+    }
+
+    /**
+     * Name of the thread that hit the breakpoint.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Location of the breakpoint.
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * Local variables of the captured stack frames. The first one is the top of the stack.
+     */
+    public List<Map<String,Object>> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Fields of the 'this' object in the top stack frame, or null if they weren't captured.
+     */
+    public Map<String,Object> getSelf() {
+        return self;
+    }
+
+    /**
+     * Captured static fields.
+     */
+    public Map<String,Object> getStatics() {
+        return statics;
+    }
+
+    /**
+     * When the snapshot was taken, in the debugger's clock.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Object getProperty(String property) {
+        if (property.equals("threadName"))  return threadName;
+        if (property.equals("location"))    return location;
+        if (property.equals("frames"))      return frames;
+        if (property.equals("self"))        return self;
+        if (property.equals("statics"))     return statics;
+        if (property.equals("timestamp"))   return timestamp;
+
+        if (property.startsWith("@"))   property=property.substring(1);
+
+        if (!frames.isEmpty() && frames.get(0).containsKey(property))
+            return frames.get(0).get(property);
+        if (self!=null && self.containsKey(property))
+            return self.get(property);
+        if (statics.containsKey(property))
+            return statics.get(property);
+        throw new MissingPropertyException(property,Snapshot.class);
+    }
+
+    public void setProperty(String property, Object newValue) {
+        throw new UnsupportedOperationException("Snapshot is read-only");
+    }
+
+    public String toString() {
+        return "Snapshot of "+threadName+" at "+location;
+    }
+
+    /**
+     * Reads the variables from the suspended thread.
+     *
+     * @param depth
+     *      Number of stack frames to capture local variables from.
+     * @param captureSelf
+     *      Whether to capture fields of the 'this' object.
+     * @param staticFields
+     *      Names of the static fields of the class of the top stack frame to capture.
+     */
+    static Snapshot capture(ThreadReference t, int depth, boolean captureSelf, Collection<String> staticFields) throws IncompatibleThreadStateException {
+        List<StackFrame> stack = t.frames(0, Math.max(1,Math.min(depth, t.frameCount())));
+
+        List<Map<String,Object>> frames = new ArrayList<Map<String,Object>>();
+        for (int i=0; i<depth && i<stack.size(); i++)
+            frames.add(readLocals(stack.get(i)));
+
+        StackFrame top = stack.get(0);
+        Location loc = top.location();
+
+        Map<String,Object> self = null;
+        if (captureSelf) {
+            ObjectReference o = top.thisObject();
+            if (o!=null)
+                self = readFields(o);
+        }
+
+        Map<String,Object> statics = new LinkedHashMap<String,Object>();
+        if (!staticFields.isEmpty()) {
+            ReferenceType type = loc.declaringType();
+            List<Field> fields = new ArrayList<Field>();
+            for (String n : staticFields) {
+                Field f = type.fieldByName(n);
+                if (f==null || !f.isStatic())
+                    throw new IllegalArgumentException("No such static field '"+n+"' on "+type.name());
+                fields.add(f);
+            }
+            Map<Field,Value> values = type.getValues(fields);
+            for (Field f : fields)
+                statics.put(f.name(), Variable.unwrap(values.get(f)));
+        }
+
+        return new Snapshot(t.name(), loc, frames, self, Collections.unmodifiableMap(statics));
+    }
+
+    /**
+     * Reads all the visible variables of the given frame in one go.
+     *
+     * If the frame has no debug information, method arguments are captured by their index.
+     */
+    private static Map<String,Object> readLocals(StackFrame f) {
+        Map<String,Object> r = new LinkedHashMap<String,Object>();
+        try {
+            List<LocalVariable> vars = f.visibleVariables();
+            Map<LocalVariable,Value> values = f.getValues(vars);
+            for (LocalVariable v : vars)
+                r.put(v.name(), Variable.unwrap(values.get(v)));
+        } catch (AbsentInformationException e) {
+            List<Value> args = f.getArgumentValues();
+            for (int i=0; i<args.size(); i++)
+                r.put(String.valueOf(i), Variable.unwrap(args.get(i)));
+        }
+        return Collections.unmodifiableMap(r);
+    }
+
+    /**
+     * Reads all the instance fields of the given object in one go.
+     */
+    private static Map<String,Object> readFields(ObjectReference o) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Field f : o.referenceType().allFields())
+            if (!f.isStatic())
+                fields.add(f);
+
+        Map<Field,Value> values = o.getValues(fields);
+        Map<String,Object> r = new LinkedHashMap<String,Object>();
+        for (Field f : fields)
+            if (!r.containsKey(f.name()))   // fields of the subtype hide those of the supertype
+                r.put(f.name(), Variable.unwrap(values.get(f)));
+        return Collections.unmodifiableMap(r);
+    }
+}
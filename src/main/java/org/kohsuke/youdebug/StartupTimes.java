@@ -0,0 +1,94 @@
+package org.kohsuke.youdebug;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breaks down the time it takes from the start of the debugger until the script is in effect,
+ * to find out what's worth optimizing.
+ *
+ * <p>
+ * Each phase is marked when it completes, and it's measured from the end of the previous phase.
+ * Only the first mark of each phase counts, so when one debugger is attached to multiple JVMs,
+ * the phases are those of the first JVM to get there.
+ */
+public final class StartupTimes {
+    private final long start = System.nanoTime();
+    private long last = start;
+    /**
+     * Phase name to its duration in nanoseconds, in the order they completed.
+     */
+    private final Map<String,Long> phases = new LinkedHashMap<String,Long>();
+    /**
+     * Where {@link #report()} writes to. Null to not write anywhere.
+     */
+    private PrintStream out;
+
+    public StartupTimes() {
+        this(null);
+    }
+
+    public StartupTimes(PrintStream out) {
+        this.out = out;
+    }
+
+    public static final String JDI_LOAD = "JDI load";
+    public static final String CONNECT = "connect";
+    public static final String COMPILE = "compile";
+    public static final String COMPILE_CACHED = "compile (cached)";
+    public static final String FIRST_REQUEST = "first request installed";
+
+    /**
+     * Marks the completion of the given phase.
+     */
+    public synchronized void mark(String phase) {
+        if (phases.containsKey(phase))  return;
+        long now = System.nanoTime();
+        phases.put(phase,now-last);
+        last = now;
+    }
+
+    /**
+     * Checks if the given phase is already marked.
+     */
+    public synchronized boolean isMarked(String phase) {
+        return phases.containsKey(phase);
+    }
+
+    /**
+     * Duration of each phase in milliseconds, in the order they completed.
+     */
+    public synchronized Map<String,Long> getPhases() {
+        Map<String,Long> r = new LinkedHashMap<String,Long>();
+        for (Entry<String,Long> e : phases.entrySet())
+            r.put(e.getKey(),TimeUnit.NANOSECONDS.toMillis(e.getValue()));
+        return r;
+    }
+
+    /**
+     * Time from the start to the last phase in milliseconds.
+     */
+    public synchronized long getTotal() {
+        return TimeUnit.NANOSECONDS.toMillis(last-start);
+    }
+
+    /**
+     * Called when the script has started, to write the breakdown. Only the first call writes.
+     */
+    public synchronized void report() {
+        if (out==null)  return;
+        out.println(this);
+        out = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder buf = new StringBuilder("Startup:");
+        for (Entry<String,Long> e : getPhases().entrySet())
+            buf.append(' ').append(e.getKey()).append(' ').append(e.getValue()).append("ms,");
+        return buf.append(" total ").append(getTotal()).append("ms").toString();
+    }
+}
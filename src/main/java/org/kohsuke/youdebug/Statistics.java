@@ -0,0 +1,211 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.request.AccessWatchpointRequest;
+import com.sun.jdi.request.BreakpointRequest;
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.ClassUnloadRequest;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.ExceptionRequest;
+import com.sun.jdi.request.MethodEntryRequest;
+import com.sun.jdi.request.MethodExitRequest;
+import com.sun.jdi.request.ModificationWatchpointRequest;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hit counts and latencies of all the event requests of a {@link VM}, and the overall event throughput.
+ *
+ * <p>
+ * These are also exposed via JMX in the debugger process, as {@code org.kohsuke.youdebug:type=Statistics}
+ * and {@code org.kohsuke.youdebug:type=RequestStatistics}.
+ *
+ * <pre>
+ * vm.statistics.dumpEvery(60)      // print the summary to stdout every minute
+ * </pre>
+ */
+public final class Statistics implements StatisticsMBean {
+    private final ConcurrentMap<String,RequestStatistics> requests = new ConcurrentHashMap<String,RequestStatistics>();
+    private final AtomicLong eventSets = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * JMX name prefix unique to this VM.
+     */
+    private final String jmxName;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private Timer timer;
+
+    Statistics() {
+        jmxName = "org.kohsuke.youdebug:vm="+SEQUENCE.incrementAndGet();
+        register("type=Statistics",this);
+    }
+
+    /**
+     * Gets the statistics object that the given request reports to.
+     */
+    RequestStatistics of(EventRequest q) {
+        String name = describe(q);
+        RequestStatistics s = requests.get(name);
+        if (s==null) {
+            RequestStatistics n = new RequestStatistics(name);
+            s = requests.putIfAbsent(name,n);
+            if (s==null) {
+                s = n;
+                register("type=RequestStatistics,name="+ObjectName.quote(name),s);
+            }
+        }
+        return s;
+    }
+
+    void onEventSet(int size) {
+        eventSets.incrementAndGet();
+        events.addAndGet(size);
+    }
+
+    /**
+     * Statistics of each request that has handled at least one event.
+     */
+    public Collection<RequestStatistics> getRequests() {
+        List<RequestStatistics> r = new ArrayList<RequestStatistics>();
+        for (RequestStatistics s : requests.values())
+            if (s.getHits()>0)
+                r.add(s);
+        return r;
+    }
+
+    public long getEventSets() {
+        return eventSets.get();
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    /**
+     * Average number of events received per second since the debug session started.
+     */
+    public double getEventsPerSecond() {
+        long elapsed = System.nanoTime()-startTime;
+        return elapsed>0 ? events.get()*1e9/elapsed : 0;
+    }
+
+    public String getSummary() {
+        StringWriter sw = new StringWriter();
+        dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    /**
+     * Prints the summary of the statistics.
+     */
+    public void dump(PrintWriter out) {
+        out.printf("%d events in %d event sets, %.1f events/sec\n", getEvents(), getEventSets(), getEventsPerSecond());
+        for (RequestStatistics s : getRequests())
+            out.println(s);
+        out.flush();
+    }
+
+    public void dump(PrintStream out) {
+        dump(new PrintWriter(out));
+    }
+
+    /**
+     * Prints the summary to stdout periodically.
+     */
+    public void dumpEvery(int seconds) {
+        dumpEvery(seconds,System.out);
+    }
+
+    /**
+     * Prints the summary periodically.
+     *
+     * @param seconds
+     *      0 to stop printing.
+     */
+    public synchronized void dumpEvery(int seconds, final PrintStream out) {
+        if (timer!=null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (seconds<=0)     return;
+
+        timer = new Timer("YouDebug statistics",true);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                dump(out);
+            }
+        }, seconds*1000L, seconds*1000L);
+    }
+
+    /**
+     * Stops the periodic dump and removes the statistics from JMX.
+     */
+    synchronized void close() {
+        dumpEvery(0,null);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName n : registered) {
+            try {
+                server.unregisterMBean(n);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        }
+        registered.clear();
+    }
+
+    private synchronized void register(String name, Object bean) {
+        try {
+            ObjectName n = new ObjectName(jmxName+","+name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean,n);
+            registered.add(n);
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "Failed to register "+name+" to JMX", e);
+        }
+    }
+
+    /**
+     * Describes the request in a way that requests of the same kind at the same place get the same description.
+     */
+    static String describe(EventRequest q) {
+        if (q instanceof BreakpointRequest)
+            return "breakpoint "+((BreakpointRequest)q).location();
+        if (q instanceof ExceptionRequest) {
+            ExceptionRequest e = (ExceptionRequest) q;
+            return "exception "+(e.exception()!=null ? e.exception().name() : "*");
+        }
+        if (q instanceof AccessWatchpointRequest)
+            return "access watchpoint "+((AccessWatchpointRequest)q).field();
+        if (q instanceof ModificationWatchpointRequest)
+            return "modification watchpoint "+((ModificationWatchpointRequest)q).field();
+        if (q instanceof MethodEntryRequest)
+            return "method entry";
+        if (q instanceof MethodExitRequest)
+            return "method exit";
+        if (q instanceof ClassPrepareRequest)
+            return "class prepare";
+        if (q instanceof ClassUnloadRequest)
+            return "class unload";
+        return q.getClass().getSimpleName();
+    }
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final Logger LOGGER = Logger.getLogger(Statistics.class.getName());
+}
@@ -0,0 +1,11 @@
+package org.kohsuke.youdebug;
+
+/**
+ * JMX view of {@link Statistics}.
+ */
+public interface StatisticsMBean {
+    long getEventSets();
+    long getEvents();
+    double getEventsPerSecond();
+    String getSummary();
+}
@@ -0,0 +1,61 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.StringReference;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reuses strings created in the target JVM, so that passing the same string to remote methods
+ * over and over doesn't create a new string in the target heap and cost a round trip each time.
+ *
+ * <p>
+ * Pooled strings are protected from garbage collection in the target JVM. To keep that bounded,
+ * the least recently used string is released when the pool is full.
+ */
+final class StringPool {
+    private final VirtualMachine vm;
+    private final Map<String,StringReference> pool;
+
+    StringPool(VirtualMachine vm, final int size) {
+        this.vm = vm;
+        this.pool = new LinkedHashMap<String,StringReference>(16,0.75f,true) {
+            protected boolean removeEldestEntry(Map.Entry<String,StringReference> e) {
+                if (size()<=size)   return false;
+                release(e.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the string of the given value in the target JVM.
+     */
+    synchronized StringReference mirrorOf(String s) {
+        StringReference r = pool.get(s);
+        if (r!=null)    return r;
+
+        while (true) {
+            r = vm.mirrorOf(s);
+            try {
+                r.disableCollection();
+                break;
+            } catch (ObjectCollectedException e) {
+                // collected before we had a chance to pin it. try again
+            }
+        }
+        pool.put(s,r);
+        return r;
+    }
+
+    private static void release(StringReference r) {
+        try {
+            r.enableCollection();
+        } catch (VMDisconnectedException e) {
+            // no need to release anything
+        }
+    }
+}
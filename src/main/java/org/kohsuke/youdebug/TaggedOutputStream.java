@@ -0,0 +1,76 @@
+package org.kohsuke.youdebug;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Prefixes each line with the name of the {@linkplain VM#current() current VM}, so that the output
+ * of scripts attached to multiple JVMs can be merged into one stream and still be told apart.
+ * Threads outside the event dispatching, such as timers, are tagged by the name given to
+ * {@link #setTag(String)} by the thread that created them.
+ *
+ * <p>
+ * Lines are buffered per thread and written out whole, so that lines from different threads don't get mixed up.
+ */
+final class TaggedOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final ThreadLocal<ByteArrayOutputStream> line = new ThreadLocal<ByteArrayOutputStream>() {
+        protected ByteArrayOutputStream initialValue() {
+            return new ByteArrayOutputStream();
+        }
+    };
+
+    TaggedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Sets the tag for the lines written by the current thread and the threads it starts from now on,
+     * when they aren't dispatching events of a {@link VM}.
+     */
+    static void setTag(String tag) {
+        TAG.set(tag);
+    }
+
+    public void write(int b) throws IOException {
+        ByteArrayOutputStream buf = line.get();
+        buf.write(b);
+        if (b=='\n')
+            writeLine(buf);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ByteArrayOutputStream buf = line.get();
+        int end = off+len;
+        for (int i=off; i<end; i++) {
+            if (b[i]=='\n') {
+                buf.write(b,off,i+1-off);
+                writeLine(buf);
+                off = i+1;
+            }
+        }
+        buf.write(b,off,end-off);
+    }
+
+    /**
+     * Incomplete lines are held until they are completed, so this only flushes what's already written.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeLine(ByteArrayOutputStream buf) throws IOException {
+        VM vm = VM.current();
+        String name = vm!=null ? vm.getName() : TAG.get();
+        synchronized (out) {
+            if (name!=null)
+                out.write(('['+name+"] ").getBytes());
+            buf.writeTo(out);
+            out.flush();
+        }
+        buf.reset();
+    }
+
+    private static final InheritableThreadLocal<String> TAG = new InheritableThreadLocal<String>();
+}
@@ -0,0 +1,152 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.AbsentInformationException;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Location;
+import com.sun.jdi.MonitorInfo;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Produces thread dumps with as few round trips and as short a pause as possible.
+ *
+ * <p>
+ * Stacks are fetched with one call per thread while the target JVM is suspended, and the JVM is
+ * resumed before they are formatted and written out. Formatted stack frames are remembered by their
+ * {@link Location}, since the same frames show up in thread after thread and dump after dump.
+ */
+final class ThreadDumper {
+    private final ConcurrentMap<Location,String> rendered = new ConcurrentHashMap<Location,String>();
+
+    /**
+     * What we need to know about a thread to dump it, taken while the thread is suspended.
+     */
+    static final class ThreadInfo {
+        final String name;
+        final String status;
+        final List<Location> stack = new ArrayList<Location>();
+        /**
+         * Monitors owned by the thread, and the stack depths at which they were locked.
+         */
+        final List<String> locked = new ArrayList<String>();
+        final List<Integer> lockedAt = new ArrayList<Integer>();
+        String contended;
+
+        ThreadInfo(ThreadReference t, boolean named) {
+            name = named ? t.name() : null;
+            status = JDICategory.getStatusMessage(t);
+        }
+    }
+
+    /**
+     * Dumps all the threads in a consistent state, by suspending the whole JVM just long enough to
+     * capture all the stacks.
+     */
+    void dumpAll(VirtualMachine vm, PrintWriter out) {
+        for (ThreadInfo t : captureAll(vm,true,vm.canGetMonitorFrameInfo()))
+            print(t,out);
+        out.flush();
+    }
+
+    /**
+     * Captures all the threads in a consistent state.
+     * The target JVM is suspended only while this method runs.
+     *
+     * @param named
+     *      Whether to capture the names of threads.
+     * @param monitors
+     *      Whether to capture the monitors held by threads, too.
+     */
+    List<ThreadInfo> captureAll(VirtualMachine vm, boolean named, boolean monitors) {
+        List<ThreadInfo> threads = new ArrayList<ThreadInfo>();
+        vm.suspend();
+        try {
+            for (ThreadReference t : vm.allThreads()) {
+                try {
+                    threads.add(capture(t,named,monitors));
+                } catch (IncompatibleThreadStateException e) {
+                    threads.add(new ThreadInfo(t,named));  // not started yet or already terminated, so no stack
+                }
+            }
+        } finally {
+            vm.resume();
+        }
+        return threads;
+    }
+
+    /**
+     * Dumps a thread that's already suspended.
+     */
+    void dump(ThreadReference t, PrintWriter out) throws IncompatibleThreadStateException {
+        print(capture(t,true,t.virtualMachine().canGetMonitorFrameInfo()),out);
+        out.flush();
+    }
+
+    /**
+     * Forgets the formatted stack frames, for when classes get unloaded or redefined.
+     */
+    void clear() {
+        rendered.clear();
+    }
+
+    private ThreadInfo capture(ThreadReference t, boolean named, boolean monitors) throws IncompatibleThreadStateException {
+        ThreadInfo ti = new ThreadInfo(t,named);
+        for (StackFrame f : t.frames())
+            ti.stack.add(f.location());
+        if (monitors) {
+            for (MonitorInfo m : t.ownedMonitorsAndFrames()) {
+                ti.locked.add(describe(m.monitor()));
+                ti.lockedAt.add(m.stackDepth());
+            }
+            ObjectReference o = t.currentContendedMonitor();
+            if (o!=null)
+                ti.contended = describe(o);
+        }
+        return ti;
+    }
+
+    private void print(ThreadInfo t, PrintWriter out) {
+        out.printf("\"%s\" %s\n", t.name, t.status);
+        for (int i=0; i<t.stack.size(); i++) {
+            out.print("\tat ");
+            out.println(render(t.stack.get(i)));
+            if (i==0 && t.contended!=null)
+                out.printf("\t- waiting to lock %s\n", t.contended);
+            for (int j=0; j<t.locked.size(); j++)
+                if (t.lockedAt.get(j)==i)
+                    out.printf("\t- locked %s\n", t.locked.get(j));
+        }
+    }
+
+    private String render(Location l) {
+        String s = rendered.get(l);
+        if (s==null) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(l.declaringType().name()).append('.').append(l.method().name());
+            try {
+                String n = l.sourceName();
+                int line = l.lineNumber();
+                if (line<0)
+                    buf.append("(Native Method)");
+                else
+                    buf.append('(').append(n).append(':').append(line).append(')');
+            } catch (AbsentInformationException e) {
+                // no debug information
+            }
+            rendered.put(l, s=buf.toString());
+        }
+        return s;
+    }
+
+    private static String describe(ObjectReference o) {
+        return "<"+o.uniqueID()+"> (a "+o.referenceType().name()+")";
+    }
+}
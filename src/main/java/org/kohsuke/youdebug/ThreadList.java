@@ -1,35 +1,106 @@
 package org.kohsuke.youdebug;
 
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ThreadGroupReference;
 import com.sun.jdi.ThreadReference;
 import com.sun.jdi.VirtualMachine;
 import com.sun.jdi.event.ThreadDeathEvent;
 import com.sun.jdi.event.ThreadStartEvent;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains a list of {@link ThreadReference}s that are in the target VM.
  *
+ * <p>
+ * The list is kept up to date from thread start/death events, and the names of threads and their
+ * thread groups are remembered when they are added, so that lookups by name don't talk to the target JVM.
+ * A thread renamed afterward is still found by its new name, but only after a full rescan.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class ThreadList extends AbstractSet<ThreadReference> {
-    private final Set<ThreadReference> threads = new CopyOnWriteArraySet<ThreadReference>();
+    /**
+     * All the threads to their names.
+     */
+    private final Map<ThreadReference,String> threads = new ConcurrentHashMap<ThreadReference,String>();
+    /**
+     * Thread names to threads. If multiple threads share the same name, one of them.
+     */
+    private final Map<String,ThreadReference> byName = new HashMap<String,ThreadReference>();
+    /**
+     * Thread group names to threads in them.
+     */
+    private final Map<String,List<ThreadReference>> byGroup = new HashMap<String,List<ThreadReference>>();
+    private final Map<ThreadReference,String> groupOf = new HashMap<ThreadReference,String>();
     private final VirtualMachine vm;
 
     /*package*/ ThreadList(VirtualMachine vm) {
         this.vm = vm;
-        threads.addAll(vm.allThreads());
+        for (ThreadReference t : vm.allThreads())
+            track(t);
     }
 
     /*package*/ void onThreadStart(ThreadStartEvent e) {
-        threads.add(e.thread());
+        track(e.thread());
     }
 
     /*package*/ void onThreadEnd(ThreadDeathEvent e) {
-        threads.remove(e.thread());
+        untrack(e.thread());
+    }
+
+    private void track(ThreadReference t) {
+        String name, group;
+        try {
+            name = t.name();
+            ThreadGroupReference g = t.threadGroup();
+            group = g!=null ? g.name() : null;
+        } catch (ObjectCollectedException e) {
+            return; // already gone
+        }
+
+        synchronized (this) {
+            if (threads.containsKey(t))
+                return;     // started while we were listing the threads initially
+            threads.put(t,name);
+            if (!byName.containsKey(name))
+                byName.put(name,t);
+            if (group!=null) {
+                groupOf.put(t,group);
+                List<ThreadReference> l = byGroup.get(group);
+                if (l==null)    byGroup.put(group,l=new ArrayList<ThreadReference>());
+                l.add(t);
+            }
+        }
+    }
+
+    private synchronized void untrack(ThreadReference t) {
+        String name = threads.remove(t);
+        if (name==null)     return;
+
+        if (t.equals(byName.get(name))) {
+            byName.remove(name);
+            // another thread of the same name?
+            for (Map.Entry<ThreadReference,String> e : threads.entrySet())
+                if (e.getValue().equals(name)) {
+                    byName.put(name,e.getKey());
+                    break;
+                }
+        }
+
+        String group = groupOf.remove(t);
+        if (group!=null) {
+            List<ThreadReference> l = byGroup.get(group);
+            l.remove(t);
+            if (l.isEmpty())    byGroup.remove(group);
+        }
     }
 
     public int size() {
@@ -40,18 +111,60 @@ public class ThreadList extends AbstractSet<ThreadReference> {
         return threads.isEmpty();
     }
 
+    public boolean contains(Object o) {
+        return threads.containsKey(o);
+    }
+
     public Iterator<ThreadReference> iterator() {
-        return threads.iterator();
+        return Collections.unmodifiableSet(threads.keySet()).iterator();
     }
 
     /**
      * Gets a thread by its {@link Thread#getName()}.
      */
     public ThreadReference byName(String name) {
-        for (ThreadReference t : threads)
-            if (t.name().equals(name))
-                return t;
-        return null;
+        ThreadReference t;
+        synchronized (this) {
+            t = byName.get(name);
+        }
+        if (t!=null)    return t;
+
+        // the thread might have been renamed since we saw it
+        for (ThreadReference r : threads.keySet()) {
+            try {
+                String n = r.name();
+                if (!n.equals(threads.get(r)))
+                    rename(r,n);
+                if (n.equals(name))
+                    t = r;
+            } catch (ObjectCollectedException e) {
+                // died. we'll get the death event shortly
+            }
+        }
+        return t;
+    }
+
+    private synchronized void rename(ThreadReference t, String newName) {
+        String oldName = threads.get(t);
+        if (oldName==null)  return;     // already dead
+        if (t.equals(byName.get(oldName)))
+            byName.remove(oldName);
+        threads.put(t,newName);
+        if (!byName.containsKey(newName))
+            byName.put(newName,t);
+    }
+
+    /**
+     * Gets all the threads in the thread group of the given name.
+     * Threads in its subgroups aren't included.
+     *
+     * @return
+     *      can be empty but never null.
+     */
+    public synchronized List<ThreadReference> byGroup(String groupName) {
+        List<ThreadReference> l = byGroup.get(groupName);
+        if (l==null)    return Collections.emptyList();
+        return new ArrayList<ThreadReference>(l);
     }
 
     /**
@@ -0,0 +1,190 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.InvalidRequestStateException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Limits how often the handler of event requests runs, so that a breakpoint in a hot loop
+ * doesn't bring the target JVM to a crawl.
+ *
+ * <p>
+ * With the 'sample' option, only every N-th event is reported. This is done with a count filter,
+ * so the events in between are skipped inside the target JVM without any communication.
+ * With the 'maxPerSecond' option, once the handler has run that many times in a second, the requests are
+ * disabled altogether, then enabled again after the cooldown, unless the script has disabled them itself.
+ *
+ * <p>
+ * One throttle can govern multiple requests, such as all the requests of a {@link BundledEventRequest},
+ * in which case they share the budget and get disabled together.
+ */
+final class Throttle {
+    /**
+     * 0 if unlimited.
+     */
+    private final int maxPerSecond;
+    /**
+     * Report one out of this many events.
+     */
+    private final int every;
+    private final long cooldown;
+
+    private final Set<EventRequest> requests = new CopyOnWriteArraySet<EventRequest>();
+    /**
+     * Requests that this throttle disabled for the cooldown, and that it's going to enable again.
+     * Those that were already disabled, or that the script enables or disables during the cooldown, are left alone.
+     */
+    private final List<EventRequest> disabled = new ArrayList<EventRequest>();
+
+    private long windowStart = System.nanoTime();
+    private int hits;
+    private boolean coolingDown;
+
+    private Throttle(int maxPerSecond, int every, long cooldown) {
+        this.maxPerSecond = maxPerSecond;
+        this.every = every;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * Creates a throttle from the 'maxPerSecond', 'sample', and 'cooldown' options.
+     *
+     * @return
+     *      null if the options don't ask for any throttling.
+     */
+    static Throttle of(Map<?,?> options) {
+        Object max = options.get("maxPerSecond");
+        Object sample = options.get("sample");
+        if (max==null && sample==null)  return null;
+
+        int m = max!=null ? ((Number)max).intValue() : 0;
+        if (m<0)    throw new IllegalArgumentException("Invalid maxPerSecond: "+max);
+
+        int every = 1;
+        if (sample!=null) {
+            double p = ((Number)sample).doubleValue();
+            if (p<=0 || p>1)    throw new IllegalArgumentException("sample needs to be in (0,1]: "+sample);
+            every = (int)Math.round(1/p);
+        }
+
+        Object c = options.get("cooldown");
+        long cooldown = c!=null ? ((Number)c).longValue() : DEFAULT_COOLDOWN;
+
+        return new Throttle(m,every,cooldown);
+    }
+
+    /**
+     * Puts the given request under this throttle. The request needs to be disabled.
+     */
+    void govern(EventRequest q) {
+        if (every>1)
+            q.addCountFilter(every);
+        requests.add(q);
+    }
+
+    /**
+     * Called upon an event from one of the governed requests to decide whether to run the handler.
+     */
+    synchronized boolean admit(EventRequest q) {
+        if (coolingDown)    return false;   // reported before the requests got disabled
+
+        if (every>1)
+            rearm(q);
+
+        if (maxPerSecond>0) {
+            long now = System.nanoTime();
+            if (now-windowStart>=ONE_SECOND) {
+                windowStart = now;
+                hits = 0;
+            }
+            if (++hits>maxPerSecond) {
+                coolDown();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A count filter expires the request once the event is reported, so start counting again.
+     */
+    private void rearm(EventRequest q) {
+        try {
+            q.disable();
+            q.enable();
+        } catch (InvalidRequestStateException e) {
+            // deleted by the handler
+        }
+    }
+
+    private void coolDown() {
+        LOGGER.fine("Disabling "+requests+" for "+cooldown+"ms");
+        coolingDown = true;
+        disabled.clear();
+        for (EventRequest q : requests) {
+            try {
+                if (q.isEnabled()) {
+                    q.disable();
+                    disabled.add(q);
+                }
+            } catch (InvalidRequestStateException e) {
+                requests.remove(q);     // deleted
+            } catch (VMDisconnectedException e) {
+                return;
+            }
+        }
+        TIMER.schedule(new TimerTask() {
+            public void run() {
+                synchronized (Throttle.this) {
+                    coolingDown = false;
+                    windowStart = System.nanoTime();
+                    hits = 0;
+                    for (EventRequest q : disabled) {
+                        try {
+                            q.enable();
+                        } catch (InvalidRequestStateException e) {
+                            requests.remove(q);     // deleted
+                        } catch (VMDisconnectedException e) {
+                            break;
+                        }
+                    }
+                    disabled.clear();
+                }
+            }
+        }, cooldown);
+    }
+
+    /**
+     * Called when the script enables or disables a governed request, which then stays the way the script left it
+     * when the cooldown ends.
+     */
+    synchronized void onSetEnabled(EventRequest q) {
+        disabled.remove(q);
+    }
+
+    /**
+     * The throttle of each governed request.
+     */
+    static final Key<Throttle> KEY = new Key<Throttle>(Throttle.class);
+
+    /**
+     * Default cooldown in milliseconds.
+     */
+    static final long DEFAULT_COOLDOWN = 1000;
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Timer TIMER = new Timer("YouDebug throttle",true);
+
+    private static final Logger LOGGER = Logger.getLogger(Throttle.class.getName());
+}
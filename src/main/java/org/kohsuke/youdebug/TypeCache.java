@@ -0,0 +1,68 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Type;
+import com.sun.jdi.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers which method an invocation resolved to, and which types are assignable to which,
+ * so that calling the same remote method over and over doesn't repeat the reflection round trips.
+ *
+ * <p>
+ * Both are keyed by the JDI mirrors of types, so everything is dropped when a class is unloaded
+ * or redefined in the target JVM.
+ *
+ * @see JDICategory#isAssignableFrom(Type, Type)
+ */
+final class TypeCache {
+    private final ConcurrentMap<List<?>,Method> methods = new ConcurrentHashMap<List<?>,Method>();
+    private final ConcurrentMap<List<Type>,Boolean> assignable = new ConcurrentHashMap<List<Type>,Boolean>();
+
+    /**
+     * Computes the key to look up the method for invoking the method of the given name
+     * with the given arguments. Arguments are keyed by their runtime types.
+     */
+    static List<?> methodKey(ReferenceType type, String name, List<Value> args, boolean staticOnly) {
+        List<Object> key = new ArrayList<Object>(args.size()+3);
+        key.add(type);
+        key.add(name);
+        key.add(staticOnly);
+        for (Value v : args)
+            key.add(v==null ? null : v.type());
+        return key;
+    }
+
+    /**
+     * @return null if not known yet.
+     */
+    Method getMethod(List<?> key) {
+        return methods.get(key);
+    }
+
+    void putMethod(List<?> key, Method m) {
+        methods.put(key,m);
+    }
+
+    /**
+     * @return null if not known yet.
+     */
+    Boolean isAssignableFrom(Type type, Type subtype) {
+        return assignable.get(Arrays.asList(type,subtype));
+    }
+
+    void putAssignableFrom(Type type, Type subtype, boolean b) {
+        assignable.put(Arrays.asList(type,subtype),b);
+    }
+
+    void clear() {
+        methods.clear();
+        assignable.clear();
+    }
+}
@@ -19,6 +19,13 @@ import java.util.List;
  * @author Kohsuke Kawaguchi
  */
 public class VMFactory {
+    /**
+     * Loads JDI and its connectors upfront, which otherwise happens upon the first connection.
+     */
+    public static void init() {
+        Bootstrap.virtualMachineManager();
+    }
+
     /**
      * Connects via a socket
      */
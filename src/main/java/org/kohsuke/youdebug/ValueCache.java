@@ -0,0 +1,156 @@
+package org.kohsuke.youdebug;
+
+import com.sun.jdi.Field;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.LocalVariable;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.Value;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers what's read from the target JVM while an event is being handled,
+ * so that the subsequent access to the same things don't require another round trip.
+ *
+ * <p>
+ * This covers the values read in batch, the top stack frames of threads, and how variable names
+ * resolve in a stack frame.
+ *
+ * <p>
+ * The cache is bound to the thread that dispatches the event, and it's discarded before the event
+ * set is resumed. Assignments drop the affected entry, and method invocations drop everything,
+ * since they can change arbitrary state in the target JVM and invalidate stack frames.
+ */
+final class ValueCache {
+    private final Map<List<?>,Value> values = new HashMap<List<?>,Value>();
+    private final Map<ThreadReference,StackFrame> frames = new HashMap<ThreadReference,StackFrame>();
+    private final Map<StackFrame,Map<String,Variable>> variables = new HashMap<StackFrame,Map<String,Variable>>();
+
+    private ValueCache() {}
+
+    /**
+     * Starts caching values on the current thread.
+     */
+    static void open() {
+        CURRENT.set(new ValueCache());
+    }
+
+    /**
+     * Discards the values cached on the current thread and stops caching.
+     */
+    static void close() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Discards all the values cached on the current thread.
+     */
+    static void invalidate() {
+        ValueCache c = CURRENT.get();
+        if (c!=null) {
+            c.values.clear();
+            c.frames.clear();
+            c.variables.clear();
+        }
+    }
+
+    /**
+     * Discards the cached value of the given variable, if any.
+     */
+    static void invalidate(Object owner, Object variable) {
+        ValueCache c = CURRENT.get();
+        if (c!=null)    c.values.remove(key(owner,variable));
+    }
+
+    /**
+     * Returns the top stack frame of the given suspended thread.
+     */
+    static StackFrame topFrame(ThreadReference t) throws IncompatibleThreadStateException {
+        ValueCache c = CURRENT.get();
+        if (c==null)    return t.frame(0);
+        StackFrame f = c.frames.get(t);
+        if (f==null)
+            c.frames.put(t, f=t.frame(0));
+        return f;
+    }
+
+    /**
+     * Returns the map that remembers how names resolve to variables in the given stack frame,
+     * including names that didn't resolve to anything, which are mapped to null.
+     *
+     * @return
+     *      null if the caching isn't in effect.
+     */
+    static Map<String,Variable> variablesOf(StackFrame f) {
+        ValueCache c = CURRENT.get();
+        if (c==null)    return null;
+        Map<String,Variable> m = c.variables.get(f);
+        if (m==null)
+            c.variables.put(f, m=new HashMap<String,Variable>());
+        return m;
+    }
+
+    static Map<Field,Value> getValues(ObjectReference o, List<Field> fields) {
+        Map<Field,Value> r = o.getValues(fields);
+        put(o,r);
+        return r;
+    }
+
+    static Map<Field,Value> getValues(ReferenceType t, List<Field> fields) {
+        Map<Field,Value> r = t.getValues(fields);
+        put(t,r);
+        return r;
+    }
+
+    static Map<LocalVariable,Value> getValues(StackFrame f, List<LocalVariable> vars) {
+        Map<LocalVariable,Value> r = f.getValues(vars);
+        put(f,r);
+        return r;
+    }
+
+    static Value getValue(ObjectReference o, Field f) {
+        List<?> k = key(o,f);
+        ValueCache c = CURRENT.get();
+        if (c!=null && c.values.containsKey(k))
+            return c.values.get(k);
+        return o.getValue(f);
+    }
+
+    static Value getValue(ReferenceType t, Field f) {
+        List<?> k = key(t,f);
+        ValueCache c = CURRENT.get();
+        if (c!=null && c.values.containsKey(k))
+            return c.values.get(k);
+        return t.getValue(f);
+    }
+
+    static Value getValue(StackFrame sf, LocalVariable v) {
+        List<?> k = key(sf,v);
+        ValueCache c = CURRENT.get();
+        if (c!=null && c.values.containsKey(k))
+            return c.values.get(k);
+        return sf.getValue(v);
+    }
+
+    private static void put(Object owner, Map<?,Value> values) {
+        ValueCache c = CURRENT.get();
+        if (c==null)    return;
+        for (Map.Entry<?,Value> e : values.entrySet())
+            c.values.put(key(owner,e.getKey()),e.getValue());
+    }
+
+    private static List<?> key(Object owner, Object variable) {
+        // static fields can be read through an instance, too
+        if (variable instanceof Field && ((Field)variable).isStatic())
+            owner = ((Field)variable).declaringType();
+        return Arrays.asList(owner,variable);
+    }
+
+    private static final ThreadLocal<ValueCache> CURRENT = new ThreadLocal<ValueCache>();
+}
@@ -1,5 +1,6 @@
 package org.kohsuke.youdebug;
 
+import com.sun.jdi.ArrayReference;
 import com.sun.jdi.ClassNotLoadedException;
 import com.sun.jdi.ClassType;
 import com.sun.jdi.Field;
@@ -39,6 +40,12 @@ abstract class Variable {
     public Object getUnwrapped() {
         return unwrap(get());
     }
+    /**
+     * Same as {@link #getUnwrapped()}, except that arrays are copied into local arrays.
+     */
+    public Object getUnwrapped(boolean arrays) {
+        return unwrap(get(),arrays);
+    }
 
     /**
      * Wraps an array by individually wrapping its members.
@@ -73,8 +80,12 @@ abstract class Variable {
             return vm.mirrorOf((Float) o);
         if (o instanceof Double)
             return vm.mirrorOf((Double) o);
-        if (o instanceof String)
+        if (o instanceof String) {
+            VM current = VM.current();
+            if (current!=null && current.getVirtualMachine()==vm)
+                return current.getStringPool().mirrorOf((String) o);
             return vm.mirrorOf((String) o);
+        }
         if (o instanceof ReferenceType)
             return ((ReferenceType)o).classObject();
         throw new IllegalArgumentException("Don't know how to wrap "+o.getClass());
@@ -102,6 +113,18 @@ abstract class Variable {
         return v;
     }
 
+    /**
+     * Same as {@link #unwrap(Value)}, but if {@code arrays} is true, also copies remote arrays into local arrays,
+     * such as {@code int[]} for primitive arrays and {@code Object[]} of unwrapped elements for others.
+     */
+    static Object unwrap(Value v, boolean arrays) {
+        if (arrays && v instanceof ArrayReference) {
+            ArrayReference a = (ArrayReference) v;
+            return ArrayAccess.toLocal(a,0,a.length());
+        }
+        return unwrap(v);
+    }
+
     static Variable fromMethodArgument(final StackFrame f, final int index) {
         return fromValue(f.virtualMachine(), f.getArgumentValues().get(index));
     }
@@ -131,6 +154,7 @@ abstract class Variable {
             public void set(Value o) {
                 try {
                     f.setValue(v,o);
+                    ValueCache.invalidate(f,v);
                 } catch (InvalidTypeException e) {
                     throw new FailedAssignmentException(e);
                 } catch (ClassNotLoadedException e) {
@@ -139,7 +163,7 @@ abstract class Variable {
             }
 
             public Value get() {
-                return f.getValue(v);
+                return ValueCache.getValue(f,v);
             }
         };
     }
@@ -153,6 +177,7 @@ abstract class Variable {
             public void set(Value o) {
                 try {
                     _this.setValue(f,o);
+                    ValueCache.invalidate(_this,f);
                 } catch (InvalidTypeException e) {
                     throw new FailedAssignmentException(e);
                 } catch (ClassNotLoadedException e) {
@@ -161,7 +186,7 @@ abstract class Variable {
             }
 
             public Value get() {
-                return _this.getValue(f);
+                return ValueCache.getValue(_this,f);
             }
         };
     }
@@ -180,6 +205,7 @@ abstract class Variable {
                     ClassType ct = (ClassType) type;
                     try {
                         ct.setValue(f,o);
+                        ValueCache.invalidate(type,f);
                     } catch (InvalidTypeException e) {
                         throw new FailedAssignmentException(e);
                     } catch (ClassNotLoadedException e) {
@@ -191,7 +217,7 @@ abstract class Variable {
             }
 
             public Value get() {
-                return type.getValue(f);
+                return ValueCache.getValue(type,f);
             }
         };
     }
@@ -9,8 +9,15 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.*;
@@ -18,6 +25,10 @@ import java.lang.NoSuchMethodException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,15 +37,65 @@ import java.util.logging.Logger;
  * Entry point.
  */
 public class YouDebug {
-    @Option(name="-pid",usage="Attaches to the local process of the given PID")
-    public int pid = -1;
+    /**
+     * PIDs of the local processes to attach to.
+     */
+    public final List<Integer> pids = new ArrayList<Integer>();
+
+    /**
+     * Socket addresses of the processes to attach to.
+     */
+    public final List<String> remotes = new ArrayList<String>();
+
+    @Option(name="-pid",usage="Attaches to the local process of the given PID. Can be specified multiple times")
+    public void addPid(int pid) {
+        pids.add(pid);
+    }
+
+    @Option(name="-socket",usage="Attaches to the target process by a socket. Can be specified multiple times",metaVar="[HOST:]PORT")
+    public void addRemote(String remote) {
+        remotes.add(remote);
+    }
 
-    @Option(name="-socket",usage="Attaches to the target process by a socket",metaVar="[HOST:]PORT")
-    public String remote = null;
+    @Option(name="-targets",usage="Attaches to all the processes listed in the file, one PID or HOST:PORT per line",metaVar="FILE")
+    public void setTargets(File f) throws IOException {
+        BufferedReader r = new BufferedReader(new FileReader(f));
+        try {
+            String line;
+            while ((line=r.readLine())!=null) {
+                line = line.trim();
+                if (line.length()==0 || line.startsWith("#"))   continue;
+                if (line.matches("[0-9]+")) addPid(Integer.parseInt(line));
+                else                        addRemote(line);
+            }
+        } finally {
+            r.close();
+        }
+    }
 
     @Option(name="-toolsJar",usage="Specify the location of the tools.jar, if it's in a non-standard location",metaVar="JAR")
     public File toolsJar = null;
 
+    @Option(name="-stats",usage="Print hit counts and latencies of event requests every N seconds",metaVar="N")
+    public int statsInterval = 0;
+
+    @Option(name="-profile",usage="Instead of running a script, sample the stacks of all the threads and write them in the collapsed stack format",metaVar="rate=50hz,duration=60s,out=stacks.txt")
+    public String profile = null;
+
+    @Option(name="-read",usage="Instead of running a script, convert a file written by vm.record(...) into text",metaVar="FILE")
+    public File record = null;
+
+    @Option(name="-format",usage="Format of the -read option output. 'csv', 'json', or 'summary'",metaVar="FORMAT")
+    public String format = "csv";
+
+    @Option(name="-noCache",usage="Compile the script every time, instead of keeping the compiled script in ~/.youdebug/scripts")
+    public boolean noCache = false;
+
+    @Option(name="-timing",usage="Print how long each phase of the startup took, from loading JDI to installing the first event request")
+    public boolean timing = false;
+
+    private StartupTimes startupTimes;
+
 //    @Option(name="-force")
 //    public boolean force = false;
 //
@@ -63,7 +124,13 @@ public class YouDebug {
     }
 
     public int run() throws Exception {
+        if (record!=null)
+            return read();
+
+        startupTimes = new StartupTimes(timing ? System.err : null);
         ensureJDILoaded();
+        VMFactory.init();
+        startupTimes.mark(StartupTimes.JDI_LOAD);
 
         if (debugLevel>0) {
             ConsoleHandler h = new ConsoleHandler();
@@ -79,9 +146,31 @@ public class YouDebug {
             logger.addHandler(h);
         }
 
-        VM vm = null;
-        if (pid>=0) {
-            vm = VMFactory.connectLocal(pid);
+        List<VM> vms = connect();
+        if (vms.isEmpty())
+            throw new CmdLineException("Neither -pid, -socket, nor -targets option was specified");
+        startupTimes.mark(StartupTimes.CONNECT);
+
+        if (profile!=null) {
+            if (vms.size()>1)
+                throw new CmdLineException("-profile can only be used with one target");
+            return profile(vms.get(0));
+        }
+
+        if (vms.size()==1) {
+            execute(vms.get(0));
+            return 0;
+        }
+        return executeAll(vms);
+    }
+
+    /**
+     * Connects to all the target JVMs.
+     */
+    private List<VM> connect() throws Exception {
+        List<VM> vms = new ArrayList<VM>();
+        for (int pid : pids) {
+            VM vm = VMFactory.connectLocal(pid);
 //            try {
 //            } catch (IOException e) {
 //                VirtualMachine avm = VirtualMachine.attach(String.valueOf(pid));
@@ -93,28 +182,175 @@ public class YouDebug {
 //                avm.detach();
 //                remote = "127.0.0.1:"+port;
 //            }
+            vm.setName(String.valueOf(pid));
+            vms.add(vm);
         }
-        if (remote!=null) {
+        for (String remote : remotes) {
             String[] tokens = remote.split(":");
             if (tokens.length==1)   tokens = new String[]{"localhost",tokens[0]};
             if (tokens.length!=2)   throw new CmdLineException("Invalid argument to the -socket option: "+remote);
-            vm = VMFactory.connectRemote(tokens[0],Integer.valueOf(tokens[1]));
+            VM vm = VMFactory.connectRemote(tokens[0],Integer.valueOf(tokens[1]));
+            vm.setName(remote);
+            vms.add(vm);
         }
-        if (vm==null)
-            throw new CmdLineException("Neither -pid nor -socket option was specified");
+        return vms;
+    }
+
+    /**
+     * Runs the script against one target JVM.
+     */
+    private void execute(VM vm) throws InterruptedException {
+        if (statsInterval>0)
+            vm.getStatistics().dumpEvery(statsInterval);
+        if (!noCache)
+            vm.setScriptCache(ScriptCache.getDefault());
+        vm.setStartupTimes(startupTimes);
 
         vm.execute(script!=null ? script : null);
+
+        if (statsInterval>0)
+            vm.getStatistics().dump(System.out);
+    }
+
+    /**
+     * Runs the script against all the target JVMs at once, each on its own thread.
+     * The output is merged, with each line tagged by the name of the JVM it's about.
+     */
+    /*package*/ int executeAll(List<VM> vms) throws InterruptedException {
+        final PrintStream out = System.out;
+        final PrintStream err = System.err;
+        System.setOut(new PrintStream(new TaggedOutputStream(out),false));
+        System.setErr(new PrintStream(new TaggedOutputStream(err),false));
+        try {
+            final AtomicInteger failures = new AtomicInteger();
+            List<Thread> threads = new ArrayList<Thread>();
+            for (final VM vm : vms) {
+                Thread t = new Thread("YouDebug "+vm.getName()) {
+                    public void run() {
+                        TaggedOutputStream.setTag(vm.getName());
+                        try {
+                            YouDebug.this.execute(vm);
+                        } catch (Throwable e) {
+                            failures.incrementAndGet();
+                            synchronized (err) {
+                                err.println("["+vm.getName()+"] Failed");
+                                e.printStackTrace(err);
+                            }
+                        }
+                    }
+                };
+                t.start();
+                threads.add(t);
+            }
+            for (Thread t : threads)
+                t.join();
+
+            return failures.get()>0 ? 1 : 0;
+        } finally {
+            // put back the streams for whoever called us
+            System.out.flush();
+            System.err.flush();
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    /**
+     * Converts the record file as specified by the -read and -format options.
+     */
+    private int read() throws Exception {
+        PrintWriter w = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        if (format.equals("csv"))
+            RecordReader.toCSV(record,w);
+        else
+        if (format.equals("json"))
+            RecordReader.toJSON(record,w);
+        else
+        if (format.equals("summary"))
+            RecordReader.summarize(record,w);
+        else
+            throw new CmdLineException("Unknown format: "+format);
+        return 0;
+    }
+
+    /**
+     * Runs the sampling profiler as specified by the -profile option.
+     */
+    private int profile(final VM vm) throws Exception {
+        int rate = 50;
+        long duration = 60000;
+        File out = null;
+        for (String token : profile.split("[,\\s]+")) {
+            if (token.length()==0)  continue;
+            String[] kv = token.split("=",2);
+            if (kv.length!=2)   throw new CmdLineException("Invalid argument to the -profile option: "+token);
+            String v = kv[1].toLowerCase();
+            try {
+                if (kv[0].equals("rate"))
+                    rate = Integer.parseInt(v.endsWith("hz") ? v.substring(0,v.length()-2) : v);
+                else
+                if (kv[0].equals("duration"))
+                    duration = parseDuration(v);
+                else
+                if (kv[0].equals("out"))
+                    out = new File(kv[1]);
+                else
+                    throw new CmdLineException("Unknown parameter to the -profile option: "+kv[0]);
+            } catch (NumberFormatException e) {
+                throw new CmdLineException("Invalid argument to the -profile option: "+token);
+            }
+        }
+
+        // keep draining events, so that the target JVM doesn't block on them
+        Thread dispatcher = new Thread("YouDebug event dispatcher") {
+            public void run() {
+                try {
+                    vm.dispatchEvents();
+                } catch (InterruptedException e) {
+                    // exit
+                }
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        Profiler p = new Profiler(vm);
+        p.run(rate,duration,TimeUnit.MILLISECONDS);
+
+        PrintWriter w = out!=null ? new PrintWriter(new BufferedWriter(new FileWriter(out))) : new PrintWriter(System.out);
+        try {
+            p.write(w);
+        } finally {
+            if (out!=null)  w.close();
+        }
+        System.err.println("Took "+p.getSamples()+" samples");
+
+        if (dispatcher.isAlive())
+            vm.close();     // otherwise the target JVM is already gone
         return 0;
     }
 
+    private static long parseDuration(String v) {
+        if (v.endsWith("ms"))   return Long.parseLong(v.substring(0,v.length()-2));
+        if (v.endsWith("s"))    return TimeUnit.SECONDS.toMillis(Long.parseLong(v.substring(0,v.length()-1)));
+        if (v.endsWith("m"))    return TimeUnit.MINUTES.toMillis(Long.parseLong(v.substring(0,v.length()-1)));
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(v));
+    }
+
     /**
      * If JDI is not already loadable, make sure it's loadable by adding <tt>tools.jar</tt> to the classpath.
+     *
+     * <p>
+     * On Java 9 and later, JDI is the <tt>jdk.jdi</tt> module, which is loadable directly, and there's no tools.jar to look for.
      */
     private void ensureJDILoaded() throws CmdLineException, MalformedURLException {
         try {
             getClass().getClassLoader().loadClass("com.sun.jdi.ThreadReference");
             // if JDK is already loaded, we don't need to resolve tools.jar.
         } catch (ClassNotFoundException _) {
+            if (isModular())
+                throw new CmdLineException("The jdk.jdi module is not available. Run this tool with JDK, not JRE, or with '--add-modules jdk.jdi'");
+
             // resolve tools.jar
             if (toolsJar==null) {
                 // locate tools.jar via java.home if not specified
@@ -144,4 +380,12 @@ public class YouDebug {
             }
         }
     }
+
+    /**
+     * Java 9 and later, where JDI comes as a module and not in tools.jar.
+     */
+    private static boolean isModular() {
+        String v = System.getProperty("java.specification.version");
+        return !v.startsWith("1.");
+    }
 }
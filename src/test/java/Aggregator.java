@@ -0,0 +1,11 @@
+/**
+ * Injected into the target JVM to compute there.
+ */
+public class Aggregator {
+    public static long sum(int[] a) {
+        long r = 0;
+        for (int i : a)
+            r += i;
+        return r;
+    }
+}
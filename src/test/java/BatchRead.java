@@ -0,0 +1,16 @@
+public class BatchRead {
+    static int counter = 7;
+    int x = 3;
+    String label = "hello";
+
+    public static void main(String[] args) {
+        new BatchRead().run();
+    }
+
+    void run() {
+        for (int i=0; i<2; i++) {
+            int y = i*2;
+            System.out.println(x+y);
+        }
+    }
+}
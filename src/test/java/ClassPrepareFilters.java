@@ -0,0 +1,15 @@
+/**
+ * Loads a few classes one after another.
+ */
+public class ClassPrepareFilters {
+    public static void main(String[] args) {
+        new A();
+        new B();
+        new C();
+        System.out.println("done");
+    }
+
+    static class A {}
+    static class B {}
+    static class C {}
+}
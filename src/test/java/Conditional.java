@@ -0,0 +1,14 @@
+public class Conditional {
+    int id = 17;
+
+    public static void main(String[] args) {
+        new Conditional().run();
+    }
+
+    void run() {
+        for (int i=0; i<10; i++) {
+            int retries = i%3;
+            System.out.println(id+retries);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+public class Covered {
+    public static void main(String[] args) {
+        int x = 0;
+        for (int i=0; i<3; i++)
+            x += i;
+        if (x > 100)
+            System.out.println("never");
+        System.out.println(x);
+    }
+
+    static void unused() {
+        System.out.println("unused");
+    }
+}
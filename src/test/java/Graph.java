@@ -0,0 +1,25 @@
+/**
+ * Object graph with a cycle, arrays, and boxed values to be copied.
+ */
+public class Graph {
+    String name;
+    Graph next;
+    int[] numbers = {1,2,3};
+    Integer boxed = 42;
+    Object[] children;
+
+    Graph(String name) {
+        this.name = name;
+    }
+
+    public static void main(String[] args) {
+        Graph a = new Graph("a");
+        Graph b = new Graph("b");
+        Graph c = new Graph("c");
+        a.next = b;
+        b.next = c;
+        c.next = a;
+        a.children = new Object[]{b,"text"};
+        System.out.println(a.name);
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Has data to aggregate in the target JVM, with a class it doesn't know about.
+ */
+public class Injection {
+    public static void main(String[] args) {
+        int[] numbers = new int[5000];
+        for (int i=0; i<numbers.length; i++)
+            numbers[i] = i;
+        System.out.println(numbers.length);
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Arrays longer than one chunk, to be read from the debugger.
+ */
+public class LargeArrays {
+    public static void main(String[] args) {
+        byte[] bytes = new byte[3000];
+        for (int i=0; i<bytes.length; i++)
+            bytes[i] = (byte)i;
+        int[] ints = new int[2500];
+        for (int i=0; i<ints.length; i++)
+            ints[i] = i*i;
+        Object[] objects = {"a", 1, new long[]{1,2}, null};
+        System.out.println(bytes.length+ints.length+objects.length);
+    }
+}
@@ -0,0 +1,21 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps adding objects to a static list, for the debugger to find.
+ */
+public class Leaky {
+    static List<Object> cache = new ArrayList<Object>();
+
+    static class Entry {
+        byte[] data = new byte[16];
+    }
+
+    public static void main(String[] args) {
+        for (int round=0; round<2; round++) {
+            for (int i=0; i<100; i++)
+                cache.add(new Entry());
+            System.out.println(cache.size());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Methods whose first instruction is jumped back to by a loop.
+ */
+public class LoopEntry {
+    public static void main(String[] args) {
+        System.out.println(countdown(3)+countdown(5)+drain(4));
+    }
+
+    private static int countdown(int n) {
+        for (;;) {
+            if (n<=0)   return n;
+            n--;
+        }
+    }
+
+    private static int drain(int n) {
+        do {
+            n--;
+        } while (n>0);
+        return n;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Calls a mix of methods so that method breakpoints have something to filter out.
+ */
+public class MethodBreakpoint {
+    public static void main(String[] args) {
+        for (int i=0; i<3; i++)
+            System.out.println(square(i)+other(i));
+    }
+
+    private static int square(int x) {
+        return other(x)*x;
+    }
+
+    private static int other(int x) {
+        return x;
+    }
+}
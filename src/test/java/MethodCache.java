@@ -0,0 +1,21 @@
+/**
+ * Overloaded methods to be invoked from the debugger over and over.
+ */
+public class MethodCache {
+    public static void main(String[] args) {
+        MethodCache o = new MethodCache();
+        System.out.println(o.answer(0)+o.answer("x"));
+    }
+
+    public int answer(int x) {
+        return 42+x;
+    }
+
+    public String answer(String s) {
+        return "answer "+s;
+    }
+
+    public long answer(long x) {
+        return -x;
+    }
+}
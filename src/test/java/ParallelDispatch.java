@@ -0,0 +1,23 @@
+/**
+ * Two threads that hit the same line concurrently.
+ */
+public class ParallelDispatch {
+    public static void main(String[] args) throws Exception {
+        Thread a = new Worker("a");
+        Thread b = new Worker("b");
+        a.start();
+        b.start();
+        a.join();
+        b.join();
+    }
+
+    static class Worker extends Thread {
+        Worker(String name) {
+            super(name);
+        }
+
+        public void run() {
+            System.out.println("hello from "+getName());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collections to be read from the debugger.
+ */
+public class RemoteCollections {
+    public static void main(String[] args) {
+        Map<String,Integer> cache = new HashMap<String,Integer>();
+        for (int i=0; i<10000; i++)
+            cache.put("k"+i,i);
+        cache.put("Aa",-1); // same hash code as "BB"
+        cache.put("BB",-2);
+        Map<String,Integer> linked = new LinkedHashMap<String,Integer>();
+        linked.put("z",1);
+        linked.put("a",2);
+        Map<Integer,String> concurrent = new ConcurrentHashMap<Integer,String>();
+        for (int i=0; i<100; i++)
+            concurrent.put(i,"v"+i);
+        List<Object> list = new ArrayList<Object>();
+        list.add("x");
+        list.add(1);
+        list.add(null);
+        List<String> linkedList = new LinkedList<String>(java.util.Arrays.asList("p","q"));
+        Map<String,String> sorted = new TreeMap<String,String>();
+        sorted.put("b","2");
+        sorted.put("a","1");
+        System.out.println(cache.size()+linked.size()+concurrent.size()+list.size()+linkedList.size()+sorted.size());
+    }
+}
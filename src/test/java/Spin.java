@@ -0,0 +1,16 @@
+public class Spin {
+    public static void main(String[] args) {
+        long end = System.currentTimeMillis()+3000;
+        double d = 0;
+        while (System.currentTimeMillis()<end)
+            d += spin();
+        System.out.println(d);
+    }
+
+    private static double spin() {
+        double d = 0;
+        for (int i=0; i<100000; i++)
+            d += Math.sqrt(i);
+        return d;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Stops at a breakpoint so that the debugger can pass strings to it.
+ */
+public class StringPooling {
+    public static void main(String[] args) {
+        System.out.println("Started");
+    }
+}
@@ -0,0 +1,8 @@
+public class ThreadDump {
+    public static void main(String[] args) throws Exception {
+        Object lock = new Object();
+        synchronized (lock) {
+            System.out.println("locked");
+        }
+    }
+}
@@ -0,0 +1,13 @@
+public class ThreadNames {
+    public static void main(String[] args) throws Exception {
+        ThreadGroup g = new ThreadGroup("workers");
+        Thread t = new Thread(g,"worker-1") {
+            public void run() {
+                System.out.println("running in "+getName());
+            }
+        };
+        t.start();
+        t.join();
+        System.out.println("done");
+    }
+}
@@ -0,0 +1,8 @@
+public class ThrottleCooldown {
+    public static void main(String[] args) throws Exception {
+        for (int i=0; i<30; i++) {
+            Thread.sleep(50);
+            System.out.println(i);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+public class Throttled {
+    public static void main(String[] args) {
+        int sum = 0;
+        for (int i=0; i<100; i++) {
+            sum += i;
+            sum -= i/2;
+        }
+        System.out.println(sum);
+    }
+}
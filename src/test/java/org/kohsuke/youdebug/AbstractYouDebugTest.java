@@ -5,6 +5,8 @@ import junit.framework.TestCase;
 import java.net.URL;
 import java.io.File;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import groovy.lang.GroovyCodeSource;
 
@@ -35,10 +37,19 @@ public abstract class AbstractYouDebugTest extends TestCase {
      * Executes the given script and returns the hit counter.
      */
     protected int exec(VM vm, String script) throws Exception {
+        return exec(vm,script,Collections.<String,Object>emptyMap());
+    }
+
+    /**
+     * Executes the given script with additional variables, and returns the hit counter.
+     */
+    protected int exec(VM vm, String script, Map<String,?> variables) throws Exception {
         Counter counter = new Counter();
+        Map<String,Object> binding = new HashMap<String,Object>(variables);
+        binding.put("hit",counter);
         vm.execute(
             new GroovyCodeSource(getClass().getClassLoader().getResource(script)),
-            Collections.singletonMap("hit",counter));
+            binding);
         return counter.n;
     }
 
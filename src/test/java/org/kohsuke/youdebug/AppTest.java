@@ -1,5 +1,18 @@
 package org.kohsuke.youdebug;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 public class AppTest extends AbstractYouDebugTest {
     public void testSubString() throws Exception {
         VM vm = fork("SubStringTest");
@@ -24,4 +37,300 @@ public class AppTest extends AbstractYouDebugTest {
         exec(vm, "ThisAccess_.groovy");
         join(vm);
     }
+
+    public void testParallelDispatch() throws Exception {
+        VM vm = fork("ParallelDispatch");
+        assertEquals(1,exec(vm, "ParallelDispatch_.groovy"));
+        join(vm);
+    }
+
+    public void testMethodBreakpoint() throws Exception {
+        VM vm = fork("MethodBreakpoint");
+        assertEquals(6,exec(vm, "MethodBreakpoint_.groovy"));
+        join(vm);
+    }
+
+    public void testLoopEntry() throws Exception {
+        VM vm = fork("LoopEntry");
+        assertEquals(6,exec(vm, "LoopEntry_.groovy"));
+        join(vm);
+    }
+
+    public void testMethodCache() throws Exception {
+        VM vm = fork("MethodCache");
+        assertEquals(1,exec(vm, "MethodCache_.groovy"));
+        join(vm);
+    }
+
+    public void testStringPooling() throws Exception {
+        VM vm = fork("StringPooling");
+        assertEquals(1,exec(vm, "StringPooling_.groovy"));
+        join(vm);
+    }
+
+    public void testSharedClassPrepare() throws Exception {
+        VM vm = fork("BatchRead");
+        assertEquals(0,exec(vm, "SharedClassPrepare_.groovy"));
+        join(vm);
+    }
+
+    public void testClassPrepareFilters() throws Exception {
+        VM vm = fork("ClassPrepareFilters");
+        assertEquals(1,exec(vm, "ClassPrepareFilters_.groovy"));
+        join(vm);
+    }
+
+    public void testCoverage() throws Exception {
+        List<Coverage> result = new ArrayList<Coverage>();
+        VM vm = fork("Covered");
+        exec(vm, "Coverage_.groovy", Collections.singletonMap("coverage",result));
+        join(vm);
+
+        Coverage cov = result.get(0);
+        Map<Integer,Boolean> lines = cov.getLines("Covered");
+        assertEquals(Arrays.asList(1,3,4,5,6,7,8,9,12,13),new ArrayList<Integer>(lines.keySet()));
+        for (int l : new int[]{3,4,5,6,8,9})
+            assertTrue("line "+l,lines.get(l));
+        for (int l : new int[]{1,7,12,13})
+            assertFalse("line "+l,lines.get(l));
+
+        StringWriter sw = new StringWriter();
+        cov.write(new PrintWriter(sw));
+        assertEquals("Covered 6/10 60.0%\n  missed: 1,7,12-13\ntotal 6/10 60.0%\n",sw.toString());
+    }
+
+    public void testScriptCache() throws Exception {
+        File dir = File.createTempFile("scripts","");
+        dir.delete();
+        try {
+            ScriptCache cache = new ScriptCache(dir);
+            for (int i=0; i<2; i++) {
+                StartupTimes times = new StartupTimes();
+                VM vm = fork("MethodBreakpoint");
+                vm.setScriptCache(cache);
+                vm.setStartupTimes(times);
+                assertEquals(6,exec(vm, "MethodBreakpoint_.groovy"));
+                join(vm);
+
+                assertEquals(i==1,times.isMarked(StartupTimes.COMPILE_CACHED));
+                assertEquals(i==0,times.isMarked(StartupTimes.COMPILE));
+                assertTrue(times.isMarked(StartupTimes.FIRST_REQUEST));
+                assertEquals(1,dir.list().length);
+            }
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    public void testSnapshot() throws Exception {
+        VM vm = fork("MethodBreakpoint");
+        assertEquals(3,exec(vm, "Snapshot_.groovy"));
+        join(vm);
+    }
+
+    public void testSnapshotFailure() throws Exception {
+        VM vm = fork("MethodBreakpoint");
+        assertEquals(1,exec(vm, "SnapshotFailure_.groovy"));
+        join(vm);
+    }
+
+    public void testGraphSnapshot() throws Exception {
+        VM vm = fork("Graph");
+        assertEquals(1,exec(vm, "GraphSnapshot_.groovy"));
+        join(vm);
+    }
+
+    public void testLargeArrays() throws Exception {
+        VM vm = fork("LargeArrays");
+        assertEquals(1,exec(vm, "LargeArrays_.groovy"));
+        join(vm);
+    }
+
+    public void testRemoteCollections() throws Exception {
+        VM vm = fork("RemoteCollections");
+        assertEquals(1,exec(vm, "RemoteCollections_.groovy"));
+        join(vm);
+    }
+
+    public void testInjection() throws Exception {
+        VM vm = fork("Injection");
+        assertEquals(1,exec(vm, "Injection_.groovy"));
+        join(vm);
+    }
+
+    public void testHistogram() throws Exception {
+        VM vm = fork("Leaky");
+        assertEquals(1,exec(vm, "Leaky_.groovy"));
+        join(vm);
+    }
+
+    public void testBatchRead() throws Exception {
+        VM vm = fork("BatchRead");
+        assertEquals(2,exec(vm, "BatchRead_.groovy"));
+        join(vm);
+    }
+
+    public void testThreadNames() throws Exception {
+        VM vm = fork("ThreadNames");
+        assertEquals(2,exec(vm, "ThreadNames_.groovy"));
+        join(vm);
+    }
+
+    public void testStatistics() throws Exception {
+        VM vm = fork("MethodBreakpoint");
+        assertEquals(3,exec(vm, "Statistics_.groovy"));
+        join(vm);
+    }
+
+    public void testThreadDump() throws Exception {
+        VM vm = fork("ThreadDump");
+        assertEquals(1,exec(vm, "ThreadDump_.groovy"));
+        join(vm);
+    }
+
+    public void testProfiler() throws Exception {
+        final VM vm = fork("Spin");
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    vm.dispatchEvents();
+                } catch (InterruptedException e) {
+                    throw new Error(e);
+                }
+            }
+        };
+        t.start();
+
+        Profiler p = new Profiler(vm);
+        p.run(50,1,TimeUnit.SECONDS);
+        StringWriter sw = new StringWriter();
+        p.write(new PrintWriter(sw));
+
+        assertTrue(p.getSamples()>0);
+        assertTrue(sw.toString().contains("RUNNING;Spin.main;Spin.spin "));
+        join(vm);
+        t.join();
+    }
+
+    public void testConditional() throws Exception {
+        VM vm = fork("Conditional");
+        assertEquals(2,exec(vm, "Conditional_.groovy"));
+        join(vm);
+    }
+
+    public void testThrottled() throws Exception {
+        VM vm = fork("Throttled");
+        assertEquals(10+5,exec(vm, "Throttled_.groovy"));
+        join(vm);
+    }
+
+    public void testThrottleCooldown() throws Exception {
+        VM vm = fork("ThrottleCooldown");
+        assertEquals(1,exec(vm, "ThrottleCooldown_.groovy"));
+        join(vm);
+    }
+
+    public void testRecord() throws Exception {
+        File f = File.createTempFile("record",".ydr");
+        try {
+            VM vm = fork("BatchRead");
+            assertEquals(2,exec(vm, "Record_.groovy", Collections.singletonMap("recordFile",f)));
+            join(vm);
+
+            RecordReader r = new RecordReader(f);
+            for (int i=0; i<2; i++) {
+                RecordReader.Record rec = r.next();
+                assertEquals("BatchRead.run:13",rec.location);
+                assertEquals("main",rec.thread);
+                assertTrue(rec.request.startsWith("breakpoint "));
+                assertEquals(Arrays.asList("i","label","self","ok","ratio","none"),new ArrayList<String>(rec.values.keySet()));
+                assertEquals((long)i,rec.values.get("i"));
+                assertEquals("hello",rec.values.get("label"));
+                assertTrue(((String)rec.values.get("self")).startsWith("BatchRead@"));
+                assertEquals(true,rec.values.get("ok"));
+                assertEquals(i/2.0,rec.values.get("ratio"));
+                assertNull(rec.values.get("none"));
+            }
+            assertNull(r.next());
+            r.close();
+
+            StringWriter sw = new StringWriter();
+            RecordReader.toCSV(f,new PrintWriter(sw));
+            assertTrue(sw.toString().startsWith("time,request,thread,location,i,label,self,ok,ratio,none\n"));
+        } finally {
+            f.delete();
+        }
+    }
+
+    public void testMultipleTargets() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(new TaggedOutputStream(buf),false);
+
+        final int[] hits = new int[2];
+        final Throwable[] errors = new Throwable[2];
+        Thread[] threads = new Thread[2];
+        for (int i=0; i<2; i++) {
+            final int n = i;
+            final VM vm = fork("BatchRead");
+            vm.setName("vm"+n);
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        hits[n] = exec(vm, "MultipleTargets_.groovy", Collections.singletonMap("out",out));
+                        AppTest.this.join(vm);
+                    } catch (Throwable e) {
+                        errors[n] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i=0; i<2; i++) {
+            threads[i].join();
+            if (errors[i]!=null)
+                throw new Exception(errors[i]);
+            assertEquals(2,hits[i]);
+        }
+
+        String s = buf.toString();
+        for (int i=0; i<2; i++)
+            for (int j=0; j<2; j++)
+                assertTrue(s.contains("[vm"+i+"] i="+j+"\n"));
+    }
+
+    public void testMultipleTargetsStreams() throws Exception {
+        File script = File.createTempFile("targets",".groovy");
+        PrintStream out = System.out, err = System.err;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream captured = new PrintStream(buf,true);
+        try {
+            FileWriter w = new FileWriter(script);
+            w.write("vm.breakpoint('BatchRead',13) { println \"i=${i}\" }");
+            w.close();
+            List<VM> vms = new ArrayList<VM>();
+            for (int i=0; i<2; i++) {
+                VM vm = fork("BatchRead");
+                vm.setName("vm"+i);
+                vms.add(vm);
+            }
+
+            YouDebug yd = new YouDebug();
+            yd.script = script;
+            yd.noCache = true;
+            System.setOut(captured);
+            assertEquals(0,yd.executeAll(vms));
+
+            // the output is tagged only while the scripts run
+            assertSame(captured,System.out);
+            assertSame(err,System.err);
+            for (VM vm : vms)
+                join(vm);
+        } finally {
+            System.setOut(out);
+            script.delete();
+        }
+        assertTrue(buf.toString().contains("[vm1] i=0\n"));
+    }
 }
@@ -0,0 +1,41 @@
+package org.kohsuke.youdebug;
+
+import groovy.lang.GroovyCodeSource;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Measures how long it takes from the start of the debugger until the script has installed its first event request,
+ * broken down to phases.
+ *
+ * <p>
+ * Most of the cost is class loading, so run this in a fresh JVM each time, with test classes in the classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... org.kohsuke.youdebug.StartupBenchmark [script cache dir]
+ * </pre>
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        StartupTimes times = new StartupTimes(System.out);
+
+        VMFactory.init();
+        times.mark(StartupTimes.JDI_LOAD);
+
+        URL url = StartupBenchmark.class.getClassLoader().getResource("SubStringTest.class");
+        VM vm = VMFactory.launch("-cp "+new File(url.getPath()).getParent()+" BatchRead");
+        Process p = vm.getVirtualMachine().process();
+        new StreamCopyThread(p.getInputStream(),System.err).start();
+        new StreamCopyThread(p.getErrorStream(),System.err).start();
+        p.getOutputStream().close();
+        times.mark(StartupTimes.CONNECT);
+
+        vm.setStartupTimes(times);
+        if (args.length>0)
+            vm.setScriptCache(new ScriptCache(new File(args[0])));
+        vm.execute(new GroovyCodeSource(StartupBenchmark.class.getClassLoader().getResource("BatchRead_.groovy")),
+                Collections.singletonMap("hit",new AbstractYouDebugTest.Counter()));
+        p.waitFor();
+    }
+}
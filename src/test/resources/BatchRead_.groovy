@@ -0,0 +1,29 @@
+import junit.framework.Assert
+
+/*
+    Read multiple variables at once, and make sure assignments aren't shadowed by the values read earlier.
+ */
+def n = 0;
+
+vm.breakpoint("BatchRead",13) {
+    def m = variables("x","y","label","counter");
+    Assert.assertEquals(["x","y","label","counter"], m.keySet() as List);
+    Assert.assertEquals(n==0 ? 3 : 5, m.x);
+    Assert.assertEquals(i*2, m.y);
+    Assert.assertEquals("hello", m.label);
+    Assert.assertEquals(7, m.counter);
+
+    Assert.assertEquals([x:m.x,label:"hello"], self.fields("x","label"));
+    Assert.assertEquals([counter:7], self.referenceType().fields("counter"));
+    Assert.assertTrue(self.referenceType().fields() instanceof List);   // JDI's own method is still reachable
+
+    x = 5;
+    Assert.assertEquals(5, x);
+
+    // method invocation resumes the thread, so the frame and variables looked up earlier have to be discarded
+    Assert.assertEquals(i*2, y);
+    self."@hashCode"();
+    Assert.assertEquals(i*2, y);
+    n++;
+    hit++;
+}
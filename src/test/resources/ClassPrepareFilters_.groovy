@@ -0,0 +1,29 @@
+import junit.framework.Assert
+import com.sun.jdi.request.EventRequest
+
+/*
+    Filters on the request returned from forEachClass apply to that call alone, even though the class prepare request is shared.
+ */
+def all = [], excluded = [], filtered = [], counted = [], suspended = [];
+vm.forEachClass('ClassPrepareFilters$*') { t -> all << t.name() };
+vm.forEachClass('ClassPrepareFilters$*') { t -> excluded << t.name() }.addClassExclusionFilter('*$B');
+vm.forEachClass('ClassPrepareFilters$*') { t -> filtered << t.name() }.addClassFilter('*$C');
+def c = vm.forEachClass('ClassPrepareFilters$*') { t -> counted << t.name() };
+c.addCountFilter(2);
+def jvm = vm.virtualMachine;
+def s = vm.forEachClass('ClassPrepareFilters$*') { t ->
+    suspended << jvm.allThreads().every { it.isSuspended() }
+};
+s.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+Assert.assertEquals(EventRequest.SUSPEND_ALL, s.suspendPolicy());
+
+vm.breakpoint("ClassPrepareFilters",9) {
+    def n = { it.collect { 'ClassPrepareFilters$'+it } };
+    Assert.assertEquals(n(["A","B","C"]), all);
+    Assert.assertEquals(n(["A","C"]), excluded);
+    Assert.assertEquals(n(["C"]), filtered);
+    Assert.assertEquals(n(["B"]), counted);
+    Assert.assertFalse(c.isEnabled());  // expired like a JDI count filter
+    Assert.assertEquals([true,true,true], suspended);
+    hit++;
+}
@@ -0,0 +1,16 @@
+import junit.framework.Assert
+
+/*
+    The body only runs when the condition holds, and the variables the condition reads are still visible to the body.
+ */
+def expected = [5,8];
+
+vm.breakpoint("Conditional",11,when:{ i>=5 && retries==2 && id==17 }) {
+    Assert.assertEquals(expected.remove(0), i);
+    Assert.assertEquals(2, retries);
+    hit++;
+}
+
+vm.breakpoint("Conditional",11,when:{ false }) {
+    Assert.fail();
+}
@@ -0,0 +1,4 @@
+/*
+    Line coverage of a class that's yet to be loaded.
+ */
+coverage.add(vm.coverage("Covered"));
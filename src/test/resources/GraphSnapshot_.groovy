@@ -0,0 +1,31 @@
+import junit.framework.Assert
+
+/*
+    Copy an object graph into local maps and lists, within the limits.
+ */
+vm.breakpoint("Graph",23) {
+    def s = a.snapshot(depth:2);
+    Assert.assertEquals("Graph", s["@class"]);
+    Assert.assertEquals("a", s.name);
+    Assert.assertEquals([1,2,3], s.numbers);
+    Assert.assertEquals(42, s.boxed);
+    Assert.assertEquals("b", s.next.name);
+    Assert.assertEquals(["@class","@id"], s.next.next.keySet() as List);  // beyond the depth
+    Assert.assertEquals([s.next["@class"],s.next["@id"]], s.children[0].values() as List);  // already copied
+    Assert.assertEquals("text", s.children[1]);
+
+    // the cycle back to 'a' ends in a reference
+    s = a.snapshot();
+    Assert.assertEquals("c", s.next.next.name);
+    Assert.assertEquals(["@class":"Graph","@id":s["@id"]], s.next.next.next);
+
+    s = a.snapshot(maxObjects:1);
+    Assert.assertEquals("a", s.name);
+    Assert.assertEquals(2, s.next.size());
+
+    // 0 is a limit, not the default
+    Assert.assertEquals(["@class","@id"], a.snapshot(maxObjects:0).keySet() as List);
+    Assert.assertEquals(["@class","@id"], a.snapshot(depth:0).keySet() as List);
+    Assert.assertEquals([], a.snapshot(maxArrayLength:0).numbers);
+    hit++;
+}
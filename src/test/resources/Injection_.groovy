@@ -0,0 +1,20 @@
+import com.sun.jdi.ObjectReference
+import junit.framework.Assert
+
+/*
+    Define a class in the target JVM and compute there, in one invocation.
+ */
+vm.breakpoint("Injection",9) {
+    Assert.assertEquals(ObjectReference.INVOKE_SINGLE_THREADED, vm.invokeOptions);
+
+    def agg = vm.inject(Aggregator);
+    Assert.assertEquals(12497500L, agg.sum(numbers));
+    Assert.assertSame(agg, vm.inject(Aggregator));
+
+    Assert.assertEquals(12497500L, vm.withInvokeOptions(0) {
+        Assert.assertEquals(0, vm.invokeOptions);
+        agg.sum(numbers)
+    });
+    Assert.assertEquals(ObjectReference.INVOKE_SINGLE_THREADED, vm.invokeOptions);
+    hit++;
+}
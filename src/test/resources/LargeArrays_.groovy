@@ -0,0 +1,34 @@
+import junit.framework.Assert
+
+/*
+    Read arrays in chunks, and copy them into local arrays.
+ */
+vm.breakpoint("LargeArrays",13) {
+    def b = bytes.toArray();
+    Assert.assertTrue(b instanceof byte[]);
+    Assert.assertEquals(3000, b.length);
+    Assert.assertEquals((byte)2999, b[2999]);
+
+    def i = ints.toArray(1020,10);
+    Assert.assertTrue(i instanceof int[]);
+    Assert.assertEquals(1020*1020, i[0]);
+    Assert.assertEquals(1029*1029, i[9]);
+
+    Assert.assertEquals([0,1,4], ints[0..2]);
+    Assert.assertEquals([2499*2499,2498*2498], ints[-1..-2]);
+    Assert.assertEquals(2500, ints[0..-1].size());
+
+    int n=0;
+    long sum=0;
+    ints.each { n++; sum+=it };
+    Assert.assertEquals(2500, n);
+    Assert.assertEquals((0..2499).sum { it*it as long }, sum);
+
+    def o = objects.toArray();
+    Assert.assertEquals("a", o[0]);
+    Assert.assertEquals("java.lang.Integer", o[1].referenceType().name());
+    Assert.assertTrue(o[2] instanceof long[]);
+    Assert.assertEquals(2L, o[2][1]);
+    Assert.assertNull(o[3]);
+    hit++;
+}
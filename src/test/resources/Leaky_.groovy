@@ -0,0 +1,28 @@
+import junit.framework.Assert
+import org.kohsuke.youdebug.Histogram
+
+/*
+    Find the growing class and what holds its instances, without a heap dump.
+ */
+def histograms = [];
+vm.breakpoint("Leaky",18) {
+    histograms << vm.histogram("Leaky*");
+    if (histograms.size()<2)    return;
+
+    def h = histograms[1];
+    Assert.assertEquals(200L, h.getCount("Leaky\$Entry"));
+    Assert.assertEquals("Leaky\$Entry", h.top(1)[0].key);
+    Assert.assertEquals(["Leaky\$Entry":100L], h.diff(histograms[0]).top(10).inject([:]) { m, e -> m[e.key]=e.value; m });
+    Assert.assertEquals(["Leaky\$Entry"] as Set, Histogram.growing(histograms).classNames);
+    Assert.assertTrue(vm.histogram().getCount("java.lang.String")>0);
+
+    int n=0;
+    vm.sampleInstances("Leaky\$Entry",3,10) { o, chain ->
+        Assert.assertEquals("Leaky\$Entry", o.referenceType().name());
+        Assert.assertEquals(["Leaky.cache","java.util.ArrayList.elementData"], chain[0..1]);
+        Assert.assertTrue(chain[2].startsWith("java.lang.Object[]["));
+        n++;
+    }
+    Assert.assertEquals(3, n);
+    hit++;
+}
@@ -0,0 +1,24 @@
+import com.sun.jdi.request.MethodEntryRequest
+import junit.framework.Assert
+
+/*
+    A method that starts with a loop should be reported once per invocation, not once per iteration.
+ */
+def started = [];
+vm.methodStartBreakpoint("LoopEntry","countdown") { m ->
+    started << n;
+    Assert.assertEquals([3,5].subList(0,started.size()), started);
+    hit++;
+}
+vm.methodReturnBreakpoint("LoopEntry","countdown") { v ->
+    Assert.assertEquals(0,v.intValue());
+    hit++;
+}
+vm.methodStartBreakpoint("LoopEntry","drain") { m ->
+    Assert.assertEquals(4,n);
+    hit++;
+}
+
+// the class-wide requests are still there
+Assert.assertTrue(vm.methodEntryBreakpoint("LoopEntry","main") { m -> hit++ } instanceof MethodEntryRequest);
+
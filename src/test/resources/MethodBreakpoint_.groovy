@@ -0,0 +1,18 @@
+import junit.framework.Assert
+
+/*
+    Method breakpoints should only hit for the method of the given name.
+ */
+def expected = [0,1,4];
+
+vm.methodStartBreakpoint("MethodBreakpoint","square") { m ->
+    Assert.assertEquals("square",m.name());
+    println "x="+x;
+    hit++;
+}
+
+vm.methodReturnBreakpoint("MethodBreakpoint","square") { v ->
+    // nested call to other() shouldn't be reported
+    Assert.assertEquals(expected.remove(0),v.intValue());
+    hit++;
+}
@@ -0,0 +1,13 @@
+import junit.framework.Assert
+
+/*
+    Resolving the same method again comes from the cache, and still picks the right overload.
+ */
+vm.breakpoint("MethodCache",7) {
+    for (int i=0; i<3; i++) {
+        Assert.assertEquals(43,o.answer(1));
+        Assert.assertEquals("answer x",o.answer("x"));
+        Assert.assertEquals(-5L,o.answer(5L));
+    }
+    hit++;
+}
@@ -0,0 +1,13 @@
+import junit.framework.Assert
+import org.kohsuke.youdebug.VM
+
+/*
+    Scripts attached to different JVMs at the same time each see their own VM, and their output is tagged.
+ */
+Assert.assertSame(vm, VM.current());
+
+vm.breakpoint("BatchRead",13) {
+    Assert.assertSame(vm, VM.current());
+    out.println("i=${i}");
+    hit++;
+}
@@ -0,0 +1,19 @@
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/*
+    Makes sure that handlers for different threads run concurrently.
+    Each handler waits for the other, which would never happen with the single-threaded dispatching.
+ */
+vm.dispatchThreads = 2;
+
+def barrier = new CyclicBarrier(2);
+def together = new AtomicInteger();
+
+vm.breakpoint("ParallelDispatch\$Worker",20) {
+    // only returns once both handlers are inside at the same moment, and throws otherwise
+    barrier.await(10,TimeUnit.SECONDS);
+    if (together.incrementAndGet()==2)
+        hit++;
+}
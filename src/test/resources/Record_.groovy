@@ -0,0 +1,9 @@
+/*
+    Record values from a breakpoint. The test reads the file back.
+ */
+vm.recordTo(recordFile);
+
+vm.breakpoint("BatchRead",13) {
+    vm.record(i:i, label:label, self:self, ok:true, ratio:i/2.0d, none:null);
+    hit++;
+}
@@ -0,0 +1,32 @@
+import junit.framework.Assert
+
+/*
+    Read collections from their fields, or through method invocations for those we don't know.
+ */
+vm.breakpoint("RemoteCollections",34) {
+    def m = cache.readMap(max:20000);
+    Assert.assertEquals(10002, m.size());
+    Assert.assertEquals(1234, m["k1234"].value);
+    Assert.assertEquals(-2, m["BB"].value);
+    Assert.assertEquals(10000, cache.readMap().size());
+    Assert.assertEquals(5, cache.readMap(max:5).size());
+
+    Assert.assertEquals(["z","a"], linked.readMap().keySet() as List);
+
+    m = concurrent.readMap();
+    Assert.assertEquals(100, m.size());
+    Assert.assertEquals("v42", m.find { k,v -> k.value==42 }.value);
+
+    Assert.assertEquals(["x",null], list.readList().with { [it[0],it[2]] });
+    Assert.assertEquals(2, list.readList(max:2).size());
+
+    // no field-level reader for these
+    Assert.assertEquals(["p","q"], linkedList.readList());
+    Assert.assertEquals([a:"1",b:"2"], sorted.readMap());
+
+    // 0 is a limit, not the default
+    Assert.assertEquals(0, cache.readMap(max:0).size());
+    Assert.assertEquals(0, list.readList(max:0).size());
+    Assert.assertEquals(0, linkedList.readList(max:0).size());
+    hit++;
+}
@@ -0,0 +1,25 @@
+import junit.framework.Assert
+
+/*
+    Breakpoints on the same class share one class prepare request, which goes away with the last of them.
+ */
+def prepares = { vm.virtualMachine.eventRequestManager().classPrepareRequests().size() }
+
+def a = vm.breakpoint("BatchRead",12) { hit++ }
+def b = vm.breakpoint("BatchRead",13) { hit++ }
+def c = vm.breakpoint("BatchRead",13) { hit++ }
+Assert.assertEquals(1, prepares());
+
+c.delete();
+Assert.assertEquals(1, prepares());
+
+vm.breakpoint("BatchRead",11) {
+    def seen = 0;
+    // the class is already known, so this gets it right away
+    vm.forEachClass("BatchRead") { t -> seen++ }.delete();
+    Assert.assertEquals(1, seen);
+
+    a.delete();
+    b.delete();
+    Assert.assertEquals(1, prepares());     // the line 11 breakpoint still has it
+}
@@ -0,0 +1,23 @@
+/*
+    A snapshot breakpoint closure that fails runs after the event set is resumed, so it must not resume it once more.
+ */
+vm.dispatchThreads = 2;
+
+def jvm = vm.virtualMachine;
+def first = true;
+
+vm.snapshotBreakpoint("MethodBreakpoint",11) { s ->
+    if (!first)     return;
+    first = false;
+
+    // suspended by someone other than the event set
+    def t = jvm.allThreads().find { it.name()=="main" };
+    t.suspend();
+    Thread.start {
+        Thread.sleep(1000);
+        if (t.suspendCount()==1)
+            hit++;
+        t.resume();
+    }
+    throw new IllegalStateException("failing after the thread has been resumed");
+}
@@ -0,0 +1,15 @@
+import junit.framework.Assert
+
+/*
+    Snapshot breakpoints run the closure with captured variables after the thread is resumed.
+ */
+def n = 0;
+
+vm.snapshotBreakpoint("MethodBreakpoint",11,frames:2) { s ->
+    Assert.assertNull(vm.currentThread);    // the thread has already been resumed
+    Assert.assertEquals("main",s.threadName);
+    Assert.assertEquals(n,s.x);
+    Assert.assertEquals(n,s.frames[1].i);   // caller's local variable
+    n++;
+    hit++;
+}
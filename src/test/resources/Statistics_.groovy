@@ -0,0 +1,25 @@
+import junit.framework.Assert
+import java.lang.management.ManagementFactory
+import javax.management.ObjectName
+
+/*
+    Hits of each request are counted, and exposed to JMX.
+ */
+def n = 0;
+
+vm.breakpoint("MethodBreakpoint",11) {
+    def s = vm.statistics.requests.find { it.request=="breakpoint MethodBreakpoint:11" };
+    if (n==0) {
+        Assert.assertNull(s);   // the first hit is recorded after we return
+    } else {
+        Assert.assertEquals(n,s.hits);
+        Assert.assertTrue(s.handlerTimeP50Micros<=s.handlerTimeMaxMicros);
+        Assert.assertTrue(s.suspendedTimeMaxMicros>=s.handlerTimeMaxMicros);
+    }
+    Assert.assertTrue(vm.statistics.events>n);
+
+    def names = ManagementFactory.platformMBeanServer.queryNames(new ObjectName("org.kohsuke.youdebug:type=RequestStatistics,*"),null);
+    Assert.assertFalse(names.isEmpty());
+    n++;
+    hit++;
+}
@@ -0,0 +1,26 @@
+import junit.framework.Assert
+
+/*
+    Strings passed to the target JVM are reused, and released once they drop out of the pool.
+ */
+vm.breakpoint("StringPooling",6) {
+    // the same string is passed as the same remote object
+    def sys = vm.ref("java.lang.System");
+    Assert.assertEquals(sys.identityHashCode("pooled"),sys.identityHashCode("pooled"))
+
+    def pool = vm.stringPool;
+    def first = pool.mirrorOf("s0");
+    Assert.assertSame(first,pool.mirrorOf("s0"));
+
+    // going over the 256 strings the pool holds releases the least recently used one, which is "s0"
+    def last = null;
+    for (int i=1; i<=256; i++)
+        last = pool.mirrorOf("s"+i);
+    sys.gc();
+    Assert.assertTrue(first.isCollected());
+    Assert.assertFalse(last.isCollected());
+
+    // and it's created afresh the next time
+    Assert.assertNotSame(first,pool.mirrorOf("s0"));
+    hit++;
+}
@@ -0,0 +1,24 @@
+import junit.framework.Assert
+
+/*
+    Thread dumps show stacks and the monitors held.
+ */
+vm.breakpoint("ThreadDump",5) {
+    def sw = new StringWriter();
+    vm.dumpAllThreads(new PrintWriter(sw));
+    def dump = sw.toString();
+    println dump;
+
+    Assert.assertTrue(dump.contains('"main" RUNNING\n\tat ThreadDump.main(ThreadDump.java:5)\n\t- locked <'));
+    Assert.assertTrue(dump.contains('> (a java.lang.Object)'));
+
+    // dump to a file, which should be identical
+    def f = File.createTempFile("threads",".txt");
+    try {
+        vm.dumpAllThreads(f);
+        Assert.assertEquals(dump,f.text);
+    } finally {
+        f.delete();
+    }
+    hit++;
+}
@@ -0,0 +1,18 @@
+import junit.framework.Assert
+
+/*
+    The thread list follows threads as they start and die.
+ */
+vm.breakpoint("ThreadNames\$1",6) {
+    Assert.assertEquals(thread,vm.threads["worker-1"]);
+    Assert.assertEquals([thread],vm.threads.byGroup("workers"));
+    Assert.assertTrue(vm.threads.contains(thread));
+    hit++;
+}
+
+vm.breakpoint("ThreadNames",11) {
+    Assert.assertNull(vm.threads["worker-1"]);
+    Assert.assertTrue(vm.threads.byGroup("workers").isEmpty());
+    Assert.assertEquals(thread,vm.threads["main"]);
+    hit++;
+}
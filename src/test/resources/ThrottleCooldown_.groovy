@@ -0,0 +1,20 @@
+import junit.framework.Assert
+
+/*
+    A rate-limited breakpoint that the script disables during its cooldown stays disabled afterwards.
+ */
+int limited = 0;
+def bp = vm.breakpoint("ThrottleCooldown",4,maxPerSecond:2,cooldown:200) {
+    limited++;
+}
+
+vm.breakpoint("ThrottleCooldown",5) {
+    if (i==2) {
+        Assert.assertEquals(2, limited);    // the third hit has started the cooldown
+        bp.disable();
+    }
+    if (i==29) {
+        Assert.assertEquals(2, limited);
+        hit++;
+    }
+}
@@ -0,0 +1,13 @@
+import junit.framework.Assert
+
+/*
+    Sampled breakpoints skip hits inside the target JVM, and rate-limited ones back off once they hit the limit.
+ */
+vm.breakpoint("Throttled",5,sample:0.1) {
+    Assert.assertEquals(9, i%10);
+    hit++;
+}
+
+vm.breakpoint("Throttled",6,maxPerSecond:5,cooldown:60000) {
+    hit++;
+}